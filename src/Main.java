@@ -1,29 +1,86 @@
 //TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
 // click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
 import nes.controller.KeyboardController;
+import nes.model.APU;
+import nes.model.CPUBenchmark;
 import nes.model.CPUSelfTest;
 import nes.model.NESConsole;
 import nes.model.Cartridge;
+import nes.model.RomIndex;
+import nes.view.AudioOutput;
 import nes.view.NESWindow;
 
 import javax.swing.*;
 import java.io.IOException;
-import javax.sound.sampled.*;
+import java.nio.file.Paths;
+import javax.sound.sampled.LineUnavailableException;
 import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
 
 public class Main {
-    private static final int SAMPLE_RATE = 44100;
-    private static final int AUDIO_BUFFER_SAMPLES = 4096; // Increased buffer size
+    private static final int DEFAULT_AUDIO_BUFFER_MS = 40;
+    private static final int AUDIO_DRAIN_SAMPLES = 4096; // the APU sample ring's capacity
+    private static final long FRAME_NANOS = 1_000_000_000L * NESConsole.NTSC_CPU_CYCLES_PER_FRAME / 1_789_773;
+
+    /**
+     * --index-roms=DIR [--rom-index=FILE]: bring the library index (default
+     * roms.idx) up to date with the .nes files under DIR in parallel, then
+     * list the ROMs whose mapper isn't supported.
+     */
+    private static boolean indexRoms(String directory, String[] args) {
+        String indexFile = "roms.idx";
+        for (String a : args) {
+            if (a.startsWith("--rom-index=")) indexFile = a.substring("--rom-index=".length());
+        }
+        try {
+            long start = System.nanoTime();
+            RomIndex index = RomIndex.open(Paths.get(indexFile));
+            int loadedEntries = index.size();
+            long loaded = System.nanoTime();
+            int indexed = index.scan(Paths.get(directory));
+            long scanned = System.nanoTime();
+            System.out.printf("ROM index %s: %d entries loaded in %d ms, %d new or changed in %d ms%n", indexFile,
+                    loadedEntries, (loaded - start) / 1_000_000, indexed, (scanned - loaded) / 1_000_000);
+            for (RomIndex.Entry entry : index.unsupported()) {
+                System.out.println("  unsupported mapper " + entry.getMapperId() + ": " + entry.getPath());
+            }
+            return true;
+        } catch (IOException ex) {
+            System.err.println("ROM indexing failed: " + ex.getMessage());
+            return false;
+        }
+    }
 
     public static void main(String[] args) {
         // CLI: run a tiny CPU self-test and exit
         for (String a : args) {
             if ("--cpu-self-test".equals(a)) {
-                boolean ok = CPUSelfTest.runTiny();
+                boolean ok = CPUSelfTest.runAll();
                 System.out.println("CPU self-test: " + (ok ? "PASS" : "FAIL"));
                 System.exit(ok ? 0 : 1);
                 return;
             }
+            if ("--cpu-bench".equals(a)) {
+                CPUBenchmark.run();
+                System.exit(0);
+                return;
+            }
+            if ("--ppu-bench".equals(a)) {
+                nes.model.PPUBenchmark.run();
+                System.exit(0);
+                return;
+            }
+            if (a.equals("--console-bench") || a.startsWith("--console-bench=")) {
+                String rom = a.indexOf('=') > 0 ? a.substring(a.indexOf('=') + 1) : null;
+                try {
+                    nes.model.ConsoleBenchmark.run(rom);
+                } catch (IOException ex) {
+                    System.err.println("Failed to load ROM '" + rom + "': " + ex.getMessage());
+                    System.exit(1);
+                }
+                System.exit(0);
+                return;
+            }
             if ("--ppu-self-test".equals(a)) {
                 boolean ok = nes.model.PPUSelfTest.runAll();
                 System.out.println("PPU self-test: " + (ok ? "PASS" : "FAIL"));
@@ -36,9 +93,25 @@ public class Main {
                 System.exit(ok ? 0 : 1);
                 return;
             }
+            if ("--apu-self-test".equals(a)) {
+                boolean ok = nes.model.APUSelfTest.runAll();
+                System.out.println("APU self-test: " + (ok ? "PASS" : "FAIL"));
+                System.exit(ok ? 0 : 1);
+                return;
+            }
+            if ("--rom-self-test".equals(a)) {
+                boolean ok = nes.model.RomSelfTest.runAll();
+                System.out.println("ROM self-test: " + (ok ? "PASS" : "FAIL"));
+                System.exit(ok ? 0 : 1);
+                return;
+            }
+            if (a.startsWith("--index-roms=")) {
+                System.exit(indexRoms(a.substring("--index-roms=".length()), args) ? 0 : 1);
+                return;
+            }
             if ("--mapper-self-test".equals(a)) {
-                boolean ok = nes.model.mapper.MapperSelfTest.runMMC1Basic();
-                System.out.println("Mapper self-test (MMC1 basic): " + (ok ? "PASS" : "FAIL"));
+                boolean ok = nes.model.mapper.MapperSelfTest.runAll();
+                System.out.println("Mapper self-test: " + (ok ? "PASS" : "FAIL"));
                 System.exit(ok ? 0 : 1);
                 return;
             }
@@ -59,6 +132,50 @@ public class Main {
                 }
             }
 
+            // Optional: run hot PRG ROM blocks through the CPU block recompiler
+            for (String a : args) {
+                if ("--recompiler".equals(a)) {
+                    console.setCpuExecution(nes.model.CPU.Execution.RECOMPILER);
+                    System.out.println("CPU execution: RECOMPILER");
+                }
+            }
+
+            // Optional: run every idle-loop iteration instead of fast-forwarding
+            for (String a : args) {
+                if ("--no-idle-skip".equals(a)) {
+                    console.setIdleLoopSkip(false);
+                    System.out.println("Idle-loop skipping disabled");
+                }
+            }
+
+            // Optional: draw only one frame in every N + 1
+            for (String a : args) {
+                String prefix = "--frameskip=";
+                if (a.startsWith(prefix)) {
+                    try {
+                        int skip = Integer.parseInt(a.substring(prefix.length()));
+                        console.setFrameSkip(skip);
+                        System.out.println("Frame skip: " + skip);
+                    } catch (NumberFormatException ignored) { }
+                }
+            }
+
+            // Optional: synthesize audio on its own thread
+            for (String a : args) {
+                if ("--deferred-audio".equals(a)) {
+                    console.setDeferredAudio(true);
+                    System.out.println("Audio synthesis deferred to its own thread");
+                }
+            }
+
+            // Optional: draw every visible line dot by dot
+            for (String a : args) {
+                if ("--no-scanline-renderer".equals(a)) {
+                    console.setScanlineRenderer(false);
+                    System.out.println("PPU scanline renderer disabled");
+                }
+            }
+
             // Optional: choose emulation mode (HLE or LLE)
             for (String a : args) {
                 String prefix = "--mode=";
@@ -110,34 +227,42 @@ public class Main {
             window.showWindow();
 
             // --- Audio Setup ---
-            SourceDataLine audioLine = null;
-            try {
-                // Use Little Endian format, which is standard for most modern systems.
-                AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false); // false for Little Endian
-                DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
-                audioLine = (SourceDataLine) AudioSystem.getLine(info);
-                audioLine.open(format, AUDIO_BUFFER_SAMPLES * 2);
-                audioLine.start();
-                
-                // Pre-fill the buffer with silence to prevent initial crackling
-                byte[] silence = new byte[AUDIO_BUFFER_SAMPLES];
-                Arrays.fill(silence, (byte)0);
-                audioLine.write(silence, 0, silence.length);
+            int sampleRate = APU.DEFAULT_SAMPLE_RATE;
+            int bufferMillis = DEFAULT_AUDIO_BUFFER_MS;
+            for (String a : args) {
+                try {
+                    if (a.startsWith("--sample-rate=")) {
+                        sampleRate = Integer.parseInt(a.substring("--sample-rate=".length()));
+                    } else if (a.startsWith("--audio-buffer-ms=")) {
+                        bufferMillis = Math.max(5, Integer.parseInt(a.substring("--audio-buffer-ms=".length())));
+                    }
+                } catch (NumberFormatException ignored) { }
+            }
+            console.setAudioSampleRate(sampleRate);
+            sampleRate = console.getAudioSampleRate(); // clamped to what the APU supports
 
+            AudioOutput audio = null;
+            try {
+                audio = new AudioOutput(sampleRate, bufferMillis);
+                System.out.printf("Audio: %d Hz, %d-sample buffer (%.1f ms)%n", sampleRate,
+                        audio.getBufferSamples(), 1000.0 * audio.getBufferSamples() / sampleRate);
             } catch (LineUnavailableException e) {
                 System.err.println("Audio line unavailable: " + e.getMessage());
                 // Exit if audio is critical
                 System.exit(1);
             }
             
-            final SourceDataLine finalAudioLine = audioLine;
+            final AudioOutput finalAudio = audio;
+            final boolean printCpuStats = Arrays.asList(args).contains("--cpu-stats");
+            final boolean printPpuStats = Arrays.asList(args).contains("--ppu-stats");
+            final boolean printAudioStats = Arrays.asList(args).contains("--audio-stats");
             
             // --- Emulation Thread ---
             Thread emulationThread = new Thread(() -> {
-                float[] sampleBuffer = new float[AUDIO_BUFFER_SAMPLES];
-                byte[] byteBuffer = new byte[AUDIO_BUFFER_SAMPLES * 2]; // 2 bytes per sample (16-bit)
+                float[] sampleBuffer = new float[AUDIO_DRAIN_SAMPLES];
 
                 long lastFpsTime = System.nanoTime();
+                long nextFrameTime = lastFpsTime;
                 int frameCount = 0;
 
                 while (true) {
@@ -145,22 +270,22 @@ public class Main {
                     console.nextFrame();
                     frameCount++;
                     
-                    // Repaint the screen on the EDT
-                    SwingUtilities.invokeLater(window::repaintScreen);
+                    // Show the newest finished frame; skipped if the EDT is still behind
+                    window.requestRepaint();
 
-                    // Drain and play audio samples
+                    // Queue the frame's audio, and steer the sample rate so the
+                    // output buffer stays about half full
                     int samplesDrained = console.drainApuSamples(sampleBuffer);
-                    if (samplesDrained > 0) {
-                        // Convert float samples to 16-bit PCM bytes (Little Endian)
-                        for (int i = 0; i < samplesDrained; i++) {
-                            float sample = Math.max(-1.0f, Math.min(1.0f, sampleBuffer[i]));
-                            short pcm = (short) (sample * Short.MAX_VALUE);
-                            byteBuffer[i * 2] = (byte) (pcm & 0xFF);      // Low byte
-                            byteBuffer[i * 2 + 1] = (byte) ((pcm >> 8) & 0xFF); // High byte
-                        }
-                        // This write call will block if the audio buffer is full,
-                        // effectively synchronizing the emulation speed to the audio output.
-                        finalAudioLine.write(byteBuffer, 0, samplesDrained * 2);
+                    finalAudio.write(sampleBuffer, samplesDrained);
+                    console.setAudioRateAdjust(finalAudio.getRateAdjust());
+
+                    // Pace frames by the clock rather than by blocking audio writes
+                    nextFrameTime += FRAME_NANOS;
+                    long wait = nextFrameTime - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    } else if (wait < -4 * FRAME_NANOS) {
+                        nextFrameTime = System.nanoTime(); // too far behind to catch up
                     }
 
                     // Update FPS counter every second
@@ -168,6 +293,27 @@ public class Main {
                     if (currentTime - lastFpsTime >= 1_000_000_000) {
                         final int fps = frameCount;
                         SwingUtilities.invokeLater(() -> window.updateFPS(fps));
+                        if (printCpuStats) {
+                            long hits = console.getDecodeCacheHits();
+                            long misses = console.getDecodeCacheMisses();
+                            int idle = console.getIdleCyclesLastFrame();
+                            System.out.printf("FPS %d, decode cache hits=%d misses=%d (%.1f%%), idle skipped %d cycles/frame (%.1f%%)%n",
+                                    fps, hits, misses, 100.0 * hits / Math.max(1, hits + misses),
+                                    idle, 100.0 * idle / NESConsole.NTSC_CPU_CYCLES_PER_FRAME);
+                        }
+                        if (printPpuStats) {
+                            long scanlineLines = console.getScanlineEngineLines();
+                            long dotLines = console.getDotEngineLines();
+                            System.out.printf("FPS %d, PPU lines: scanline engine=%d dot path=%d (%.1f%% scanline)%n",
+                                    fps, scanlineLines, dotLines,
+                                    100.0 * scanlineLines / Math.max(1, scanlineLines + dotLines));
+                        }
+                        if (printAudioStats) {
+                            System.out.printf("FPS %d, audio ring overflows=%d underruns=%d, output fill=%.0f%% latency=%.1f ms rate adjust=%+.3f%% dropped=%d%n",
+                                    fps, console.getAudioOverflows(), console.getAudioUnderruns(),
+                                    100.0 * finalAudio.getFill(), finalAudio.getLatencyMillis(),
+                                    100.0 * (finalAudio.getRateAdjust() - 1.0), finalAudio.getDroppedSamples());
+                        }
                         frameCount = 0;
                         lastFpsTime = currentTime;
                     }
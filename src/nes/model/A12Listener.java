@@ -0,0 +1,13 @@
+package nes.model;
+
+/**
+ * PPU address line A12 for mappers that count its rising edges (MMC3's
+ * scanline counter). A mapper opts in by implementing this interface; the PPU
+ * resolves it once in {@link PPU#setCartridge}, tracks A12 across every pattern
+ * table read and write itself, and calls back only on a 0 to 1 transition, so
+ * other boards keep a plain array read on the pattern fetch path.
+ */
+public interface A12Listener {
+    /** A pattern table access moved A12 from 0 to 1. */
+    void a12Rose();
+}
@@ -1,7 +1,7 @@
 package nes.model;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import nes.util.BlipBuffer;
+import nes.util.FloatRingBuffer;
 
 /**
  * A more complete implementation of the NES Audio Processing Unit (APU).
@@ -10,13 +10,23 @@ import java.util.Queue;
  * It uses a Frame Counter to drive the length counters and envelope units, which is
  * essential for correct note duration and volume decay.
  * The DMC channel is not implemented.
+ *
+ * Stepping is event driven: elapsed CPU cycles are only counted until the next
+ * cycle that can change something (an audible channel's timer reload, a frame
+ * counter step, or a sample flush), and the channel timers catch up in one
+ * jump. Cycles handed over by OAM DMA or the CPU's idle-loop skip therefore
+ * cost per event rather than per cycle.
+ *
+ * Synthesis can also be deferred to a thread of its own (see
+ * {@link #setDeferredSynthesis}); this APU then keeps only what the CPU can
+ * observe: the length counters behind $4015, the frame counter and its IRQ.
  */
 public class APU {
 
-    private final Pulse pulse1 = new Pulse(true); // true for pulse 1 (extra sweep behavior)
-    private final Pulse pulse2 = new Pulse(false);
-    private final Triangle triangle = new Triangle();
-    private final Noise noise = new Noise();
+    private Pulse pulse1 = new Pulse(true); // true for pulse 1 (extra sweep behavior)
+    private Pulse pulse2 = new Pulse(false);
+    private Triangle triangle = new Triangle();
+    private Noise noise = new Noise();
     private Bus bus;
 
     private boolean frameInterruptFlag = false;
@@ -26,11 +36,30 @@ public class APU {
     private int frameCounter = 0;
     private int frameCounterMode = 0; // 0 for 4-step, 1 for 5-step
 
-    private final Queue<Float> sampleBuffer = new LinkedList<>();
+    private int pendingCycles = 0; // elapsed cycles not yet applied; none of them is an event
+    private int cyclesToEvent = 1; // from the applied state to the next cycle that is one
+    private boolean eventDriven = true;
+    private DeferredSynthesis deferred; // non-null while synthesis runs on its own thread
+
+    private final FloatRingBuffer sampleBuffer = new FloatRingBuffer(4096); // APU thread -> audio thread
     
-    // Audio timing
-    private static final double CYCLES_PER_SAMPLE = 1789773.0 / 44100.0; // ~40.58
-    private double sampleTimer = 0.0;
+    // Audio synthesis: the mixed output is recorded as band-limited steps only on
+    // cycles where it can change, and resampled to the output rate by the blip buffer.
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+    public static final int MIN_SAMPLE_RATE = 22050;
+    public static final int MAX_SAMPLE_RATE = 96000;
+    private static final double CPU_CLOCK_RATE = 1789773.0;
+    private static final int FLUSH_CYCLES = 2048; // hand samples to the ring every ~1.1 ms
+    private final BlipBuffer blip = new BlipBuffer(CPU_CLOCK_RATE, DEFAULT_SAMPLE_RATE, 256);
+    private final float[] blipSamples = new float[256];
+    // Set from the audio side, picked up by the synthesizing thread at the next flush.
+    private volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+    private volatile double rateAdjust = 1.0;
+    private double blipRate = DEFAULT_SAMPLE_RATE; // rate the blip buffer currently produces
+    private float filterCoefficient = 0.996f;
+    private int blipClock;       // CPU cycles into the current blip frame
+    private float lastMix;       // output level last recorded in the blip buffer
+    private boolean outputDirty; // a register write or frame-counter clock may have changed the output
     
     // High-Pass Filter state for DC offset removal
     private float filterPrevSample = 0.0f;
@@ -62,77 +91,274 @@ public class APU {
     }
 
     public void reset() {
+        if (deferred != null) deferred.logReset();
         pulse1.reset();
         pulse2.reset();
         triangle.reset();
         noise.reset();
         cpuCycleCounter = 0;
         frameCounter = 0;
-        sampleTimer = 0.0;
+        pendingCycles = 0;
+        cyclesToEvent = 1;
+        blip.clear();
+        blipClock = 0;
+        lastMix = 0.0f;
+        outputDirty = true;
         sampleBuffer.clear();
         filterPrevSample = 0.0f;
         filterPrevOutput = 0.0f;
     }
 
     public void stepCpuCycles(int cpuCycles) {
-        for (int i = 0; i < cpuCycles; i++) {
-            cpuCycleCounter++;
+        if (deferred != null) deferred.elapse(cpuCycles);
+        pendingCycles += cpuCycles;
+        if (pendingCycles >= cyclesToEvent) {
+            catchUp();
+        }
+        // The frame IRQ is level triggered: keep the line up while the flag is set.
+        if (frameInterruptFlag && !frameIrqInhibit) {
+            if (bus != null) bus.requestIrq();
+        }
+    }
+
+    /**
+     * Event driven (default): only frame counter steps, timer reloads of
+     * audible channels and sample flushes run as full cycles, and the timers
+     * jump arithmetically over the cycles in between. Otherwise every cycle is
+     * clocked on its own. The samples, the frame IRQ timing and $4015 reads
+     * must not depend on the choice; {@link APUSelfTest} checks that.
+     */
+    void setEventDriven(boolean eventDriven) {
+        catchUp();
+        this.eventDriven = eventDriven;
+        cyclesToEvent = cyclesToNextEvent();
+    }
+
+    /**
+     * Synthesize on a separate thread (true) or on the caller's (false).
+     * While deferred, register writes are logged with their cycle and replayed
+     * by the synthesis thread on a copy of this APU; samples are the same
+     * either way. Switching back resumes synthesis here from this APU's
+     * register state, so a switch mid-game may glitch briefly.
+     */
+    public void setDeferredSynthesis(boolean enabled) {
+        if (enabled == (deferred != null)) return;
+        catchUp();
+        if (enabled) {
+            deferred = new DeferredSynthesis(copyForSynthesis());
+        } else {
+            deferred.stop();
+            deferred = null;
+        }
+        cyclesToEvent = cyclesToNextEvent();
+    }
+
+    public boolean isDeferredSynthesis() {
+        return deferred != null;
+    }
+
+    /** Mark the end of an emulated frame: hands the frame's writes to the synthesis thread. */
+    public void endFrame() {
+        if (deferred != null) deferred.endBatch();
+    }
+
+    /** Wait until deferred synthesis has rendered everything logged so far. */
+    void syncSynthesis() {
+        if (deferred != null) deferred.sync();
+    }
 
+    /** A new APU in this one's state, to take over synthesis; samples not yet flushed stay behind. */
+    private APU copyForSynthesis() {
+        APU copy = new APU();
+        copy.pulse1 = pulse1.copy();
+        copy.pulse2 = pulse2.copy();
+        copy.triangle = triangle.copy();
+        copy.noise = noise.copy();
+        copy.frameInterruptFlag = frameInterruptFlag;
+        copy.frameIrqInhibit = frameIrqInhibit;
+        copy.cpuCycleCounter = cpuCycleCounter;
+        copy.frameCounterMode = frameCounterMode;
+        copy.blipClock = blipClock;
+        copy.sampleRate = sampleRate;
+        copy.rateAdjust = rateAdjust;
+        copy.blipRate = blipRate;
+        copy.blip.setSampleRate(blipRate);
+        copy.filterCoefficient = filterCoefficient;
+        copy.lastMix = lastMix;
+        copy.outputDirty = true;
+        copy.filterPrevSample = filterPrevSample;
+        copy.filterPrevOutput = filterPrevOutput;
+        return copy;
+    }
+
+    /** Apply every pending cycle, running each event cycle in full and jumping over the rest. */
+    private void catchUp() {
+        while (pendingCycles >= cyclesToEvent) {
+            pendingCycles -= cyclesToEvent;
+            advance(cyclesToEvent - 1);
+            clockEventCycle();
+            cyclesToEvent = cyclesToNextEvent();
+        }
+        advance(pendingCycles);
+        cyclesToEvent -= pendingCycles;
+        pendingCycles = 0;
+    }
+
+    /** Skip {@code cycles} cycles known to hold no event: only timers and counters move. */
+    private void advance(int cycles) {
+        if (cycles == 0) return;
+        if (deferred == null) {
+            // APU timers tick on even values of the cycle counter
+            int apuCycles = (cpuCycleCounter + cycles) / 2 - cpuCycleCounter / 2;
+            pulse1.advance(apuCycles);
+            pulse2.advance(apuCycles);
+            noise.advance(apuCycles);
+            triangle.advance(cycles);
+            blipClock += cycles;
+        }
+        cpuCycleCounter += cycles;
+    }
+
+    /**
+     * Cycles from now to the next one that must be run in full. Silent
+     * channels never count: their sequencers move in {@link #advance} but
+     * cannot change the output. With synthesis deferred only the frame
+     * counter does.
+     */
+    private int cyclesToNextEvent() {
+        if (!eventDriven) return 1;
+        if (deferred != null) return cyclesToFrameStep();
+        if (outputDirty) return 1;
+        int next = Math.min(FLUSH_CYCLES - blipClock, cyclesToFrameStep());
+        int odd = cpuCycleCounter & 1;
+        if (!pulse1.isSilent()) next = Math.min(next, 2 * (pulse1.timer + 1) - odd);
+        if (!pulse2.isSilent()) next = Math.min(next, 2 * (pulse2.timer + 1) - odd);
+        if (!noise.isSilent()) next = Math.min(next, 2 * (noise.timer + 1) - odd);
+        if (triangle.isSequencing()) next = Math.min(next, triangle.timer + 1);
+        return next;
+    }
+
+    private int cyclesToFrameStep() {
+        int c = cpuCycleCounter;
+        if (c < 7457) return 7457 - c;
+        if (c < 14913) return 14913 - c;
+        if (c < 22371) return 22371 - c;
+        if (frameCounterMode == 0) return 29829 - c;
+        return (c < 37281) ? 37281 - c : 37282 - c;
+    }
+
+    /** Run one CPU cycle in full. */
+    private void clockEventCycle() {
+        cpuCycleCounter++;
+
+        boolean stepped = false;
+        if (deferred == null) {
             // APU channels are clocked at half CPU speed
             if (cpuCycleCounter % 2 == 0) {
-                pulse1.stepTimer();
-                pulse2.stepTimer();
-                noise.stepTimer();
+                stepped = pulse1.stepTimer() | pulse2.stepTimer() | noise.stepTimer();
             }
             // Triangle is clocked at CPU speed
-            triangle.stepTimer();
-
-            // Frame Counter logic
-            // (Approximate timings for NTSC)
-            if (frameCounterMode == 0) { // 4-Step Sequence
-                if (cpuCycleCounter == 7457) { clockQuarterFrame(); }
-                if (cpuCycleCounter == 14913) { clockQuarterFrame(); clockHalfFrame(); }
-                if (cpuCycleCounter == 22371) { clockQuarterFrame(); }
-                if (cpuCycleCounter == 29829) {
-                    clockQuarterFrame();
-                    clockHalfFrame();
-                    cpuCycleCounter = 0;
-                    if (!frameIrqInhibit) {
-                        frameInterruptFlag = true;
-                        if (bus != null) bus.requestIrq();
-                    }
-                }
-            } else { // 5-Step Sequence
-                if (cpuCycleCounter == 7457) { clockQuarterFrame(); }
-                if (cpuCycleCounter == 14913) { clockQuarterFrame(); clockHalfFrame(); }
-                if (cpuCycleCounter == 22371) { clockQuarterFrame(); }
-                if (cpuCycleCounter == 37281) { clockQuarterFrame(); clockHalfFrame(); }
-                if (cpuCycleCounter >= 37282) { cpuCycleCounter = 0; }
-            }
+            stepped |= triangle.stepTimer();
+        }
 
-            // Sample generation with fractional precision
-            sampleTimer += 1.0;
-            if (sampleTimer >= CYCLES_PER_SAMPLE) {
-                sampleTimer -= CYCLES_PER_SAMPLE;
-                if (sampleBuffer.size() < 4096) {
-                    float rawSample = mixOutput();
-                    // High-Pass Filter to remove DC offset
-                    // y[n] = x[n] - x[n-1] + 0.996 * y[n-1]
-                    float filteredSample = rawSample - filterPrevSample + 0.996f * filterPrevOutput;
-                    filterPrevSample = rawSample;
-                    filterPrevOutput = filteredSample;
-                    
-                    sampleBuffer.add(filteredSample);
+        // Frame Counter logic
+        // (Approximate timings for NTSC)
+        if (frameCounterMode == 0) { // 4-Step Sequence
+            if (cpuCycleCounter == 7457) { clockQuarterFrame(); }
+            if (cpuCycleCounter == 14913) { clockQuarterFrame(); clockHalfFrame(); }
+            if (cpuCycleCounter == 22371) { clockQuarterFrame(); }
+            if (cpuCycleCounter == 29829) {
+                clockQuarterFrame();
+                clockHalfFrame();
+                cpuCycleCounter = 0;
+                if (!frameIrqInhibit) {
+                    frameInterruptFlag = true;
+                    if (bus != null) bus.requestIrq();
                 }
             }
+        } else { // 5-Step Sequence
+            if (cpuCycleCounter == 7457) { clockQuarterFrame(); }
+            if (cpuCycleCounter == 14913) { clockQuarterFrame(); clockHalfFrame(); }
+            if (cpuCycleCounter == 22371) { clockQuarterFrame(); }
+            if (cpuCycleCounter == 37281) { clockQuarterFrame(); clockHalfFrame(); }
+            if (cpuCycleCounter >= 37282) { cpuCycleCounter = 0; }
+        }
+
+        if (deferred != null) return;
 
-            if (frameInterruptFlag && !frameIrqInhibit) {
-                if (bus != null) bus.requestIrq();
+        // Record a step whenever the mixed output changes
+        if (stepped || outputDirty) {
+            outputDirty = false;
+            float mix = mixOutput();
+            if (mix != lastMix) {
+                blip.addDelta(blipClock, mix - lastMix);
+                lastMix = mix;
             }
         }
+        if (++blipClock >= FLUSH_CYCLES) {
+            flushSamples();
+        }
+    }
+
+    /**
+     * CPU cycles until the frame counter next requests IRQ: 0 while the frame
+     * interrupt flag is already raised, and never in 5-step or inhibited mode.
+     */
+    int cpuCyclesUntilFrameIrq() {
+        if (frameCounterMode != 0 || frameIrqInhibit) return Integer.MAX_VALUE;
+        if (frameInterruptFlag) return 0;
+        return Math.max(0, 29829 - cpuCycleCounter - pendingCycles);
+    }
+
+    /** Close the blip frame and move its samples, high-pass filtered, into the sample ring. */
+    private void flushSamples() {
+        blip.endFrame(blipClock);
+        blipClock = 0;
+        int count = blip.readSamples(blipSamples, blipSamples.length);
+        for (int i = 0; i < count; i++) {
+            float rawSample = blipSamples[i];
+            // High-Pass Filter to remove DC offset
+            // y[n] = x[n] - x[n-1] + R * y[n-1], R = 0.996 at 44.1 kHz
+            float filteredSample = rawSample - filterPrevSample + filterCoefficient * filterPrevOutput;
+            filterPrevSample = rawSample;
+            filterPrevOutput = filteredSample;
+
+            sampleBuffer.offer(filteredSample);
+        }
+        double rate = sampleRate * rateAdjust;
+        if (rate != blipRate) {
+            blipRate = rate;
+            blip.setSampleRate(rate);
+            // Keep the filter's ~28 Hz corner where it is at the nominal rate
+            filterCoefficient = (float) Math.pow(0.996, (double) DEFAULT_SAMPLE_RATE / sampleRate);
+        }
+    }
+
+    /**
+     * Output sample rate, clamped to {@link #MIN_SAMPLE_RATE}-{@link #MAX_SAMPLE_RATE}.
+     * May be called from any thread; takes effect within a couple of milliseconds.
+     */
+    public void setSampleRate(int rate) {
+        sampleRate = Math.max(MIN_SAMPLE_RATE, Math.min(MAX_SAMPLE_RATE, rate));
+        if (deferred != null) deferred.setSampleRate(sampleRate);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Scale the sample rate by {@code adjust} (e.g. 1.002 for 0.2% more
+     * samples per emulated second), so an audio sink can keep its buffer
+     * level steady against clock drift. May be called from any thread.
+     */
+    public void setRateAdjust(double adjust) {
+        rateAdjust = adjust;
+        if (deferred != null) deferred.setRateAdjust(adjust);
     }
 
     private void clockQuarterFrame() {
+        outputDirty = true;
         pulse1.stepEnvelope();
         pulse2.stepEnvelope();
         triangle.stepLinearCounter();
@@ -140,6 +366,7 @@ public class APU {
     }
 
     private void clockHalfFrame() {
+        outputDirty = true;
         pulse1.stepLength();
         pulse1.stepSweep();
         pulse2.stepLength();
@@ -155,14 +382,18 @@ public class APU {
     }
 
     public int drainSamples(float[] buffer) {
-        int count = 0;
-        while (!sampleBuffer.isEmpty() && count < buffer.length) {
-            buffer[count++] = sampleBuffer.poll();
-        }
-        return count;
+        return getSampleBuffer().drain(buffer);
+    }
+
+    /** The ring samples are read from, for its overflow/underrun counters. */
+    public FloatRingBuffer getSampleBuffer() {
+        return (deferred != null) ? deferred.getSampleBuffer() : sampleBuffer;
     }
 
     public void writeRegister(int address, int value) {
+        catchUp();
+        if (deferred != null) deferred.logWrite(address, value);
+        outputDirty = true;
         switch (address) {
             // Pulse 1
             case 0x4000: pulse1.writeControl(value); break;
@@ -203,6 +434,7 @@ public class APU {
                 }
                 break;
         }
+        cyclesToEvent = cyclesToNextEvent();
     }
 
     public int readRegister(int address) {
@@ -222,7 +454,10 @@ public class APU {
 
     // --- Channel Implementations ---
 
-    private static class Pulse {
+    private static class Pulse implements Cloneable {
+        Pulse copy() {
+            try { return (Pulse) clone(); } catch (CloneNotSupportedException e) { throw new AssertionError(e); }
+        }
         private final boolean isPulse1;
         boolean enabled;
         // Registers
@@ -264,7 +499,21 @@ public class APU {
         void writeTimerLo(int v) { timerPeriod = (timerPeriod & 0xFF00) | v; }
         void writeTimerHi(int v) { timerPeriod = (timerPeriod & 0x00FF) | ((v & 7) << 8); lengthCounterLoad = (v >> 3) & 0x1F; if (enabled) lengthCounter = lengthCounterTable[lengthCounterLoad]; timer = timerPeriod; envelopeStart = true; }
 
-        void stepTimer() { if (timer == 0) { timer = timerPeriod; sequenceStep = (sequenceStep + 1) & 7; } else { timer--; } }
+        /** Returns true when the sequencer moved, i.e. the output may have changed. */
+        boolean stepTimer() { if (timer == 0) { timer = timerPeriod; sequenceStep = (sequenceStep + 1) & 7; return true; } timer--; return false; }
+        /** Equivalent to {@code steps} calls of {@link #stepTimer}. */
+        void advance(int steps) {
+            if (steps <= timer) { timer -= steps; return; }
+            steps -= timer + 1; // the first reload
+            int reloadPeriod = timerPeriod + 1;
+            sequenceStep = (sequenceStep + 1 + steps / reloadPeriod) & 7;
+            timer = timerPeriod - steps % reloadPeriod;
+        }
+        /** True when the output is 0 at every sequencer step. */
+        boolean isSilent() {
+            return !enabled || lengthCounter == 0 || timerPeriod < 8 || sweepTargetPeriod > 0x7FF
+                    || (constantVolume ? volume : envelopeDecay) == 0;
+        }
         void stepLength() { if (!lengthHalt && lengthCounter > 0) lengthCounter--; }
         void stepEnvelope() {
             if (envelopeStart) {
@@ -309,7 +558,10 @@ public class APU {
         }
     }
 
-    private static class Triangle {
+    private static class Triangle implements Cloneable {
+        Triangle copy() {
+            try { return (Triangle) clone(); } catch (CloneNotSupportedException e) { throw new AssertionError(e); }
+        }
         boolean enabled;
         boolean controlFlag;
         int linearCounterLoad;
@@ -333,13 +585,26 @@ public class APU {
         void writeTimerLo(int v) { timerPeriod = (timerPeriod & 0xFF00) | v; }
         void writeTimerHi(int v) { timerPeriod = (timerPeriod & 0x00FF) | ((v & 7) << 8); lengthCounterLoad = (v >> 3) & 0x1F; if (enabled) lengthCounter = lengthCounterTable[lengthCounterLoad]; linearCounterReload = true; }
 
-        void stepTimer() { if (timer == 0) { timer = timerPeriod; if (lengthCounter > 0 && linearCounter > 0) sequenceStep = (sequenceStep + 1) & 0x1F; } else { timer--; } }
+        boolean stepTimer() { if (timer == 0) { timer = timerPeriod; if (lengthCounter > 0 && linearCounter > 0) { sequenceStep = (sequenceStep + 1) & 0x1F; return true; } return false; } timer--; return false; }
+        /** Equivalent to {@code steps} calls of {@link #stepTimer}. */
+        void advance(int steps) {
+            if (steps <= timer) { timer -= steps; return; }
+            steps -= timer + 1; // the first reload
+            int reloadPeriod = timerPeriod + 1;
+            if (isSequencing()) sequenceStep = (sequenceStep + 1 + steps / reloadPeriod) & 0x1F;
+            timer = timerPeriod - steps % reloadPeriod;
+        }
+        /** True when timer reloads move the sequencer (and so the output). */
+        boolean isSequencing() { return lengthCounter > 0 && linearCounter > 0; }
         void stepLength() { if (!controlFlag && lengthCounter > 0) lengthCounter--; }
         void stepLinearCounter() { if (linearCounterReload) linearCounter = linearCounterLoad; else if (linearCounter > 0) linearCounter--; if (!controlFlag) linearCounterReload = false; }
         int getSample() { return enabled ? sequenceTable[sequenceStep] : 0; }
     }
 
-    private static class Noise {
+    private static class Noise implements Cloneable {
+        Noise copy() {
+            try { return (Noise) clone(); } catch (CloneNotSupportedException e) { throw new AssertionError(e); }
+        }
         boolean enabled;
         boolean lengthHalt;
         boolean constantVolume;
@@ -361,14 +626,31 @@ public class APU {
         void writePeriod(int v) { mode = (v & 0x80) != 0; period = noisePeriodTable[v & 0x0F]; }
         void writeLength(int v) { lengthCounterLoad = (v >> 3) & 0x1F; if (enabled) lengthCounter = lengthCounterTable[lengthCounterLoad]; envelopeStart = true; }
 
-        void stepTimer() {
+        boolean stepTimer() {
             if (timer == 0) {
                 timer = period;
-                int feedbackBit = (shiftRegister & 1) ^ ((mode ? (shiftRegister >> 6) : (shiftRegister >> 1)) & 1);
-                shiftRegister = (shiftRegister >> 1) | (feedbackBit << 14);
-            } else {
-                timer--;
+                clockShiftRegister();
+                return true;
+            }
+            timer--;
+            return false;
+        }
+        /** Equivalent to {@code steps} calls of {@link #stepTimer}. */
+        void advance(int steps) {
+            while (steps > timer) {
+                steps -= timer + 1;
+                timer = period;
+                clockShiftRegister();
             }
+            timer -= steps;
+        }
+        private void clockShiftRegister() {
+            int feedbackBit = (shiftRegister & 1) ^ ((mode ? (shiftRegister >> 6) : (shiftRegister >> 1)) & 1);
+            shiftRegister = (shiftRegister >> 1) | (feedbackBit << 14);
+        }
+        /** True when the output is 0 whatever the shift register holds. */
+        boolean isSilent() {
+            return !enabled || lengthCounter == 0 || (constantVolume ? volume : envelopeDecay) == 0;
         }
         void stepLength() { if (!lengthHalt && lengthCounter > 0) lengthCounter--; }
         void stepEnvelope() {
@@ -0,0 +1,101 @@
+package nes.model;
+
+import java.util.Arrays;
+
+/**
+ * APU self-tests. Like the CPU and PPU ones these are smoke tests, run from
+ * the command line, that guard the fast paths against their plain versions.
+ */
+public final class APUSelfTest {
+    private APUSelfTest() {}
+
+    // {cycle, register, value}: a short tune touching every channel, the sweep
+    // unit, muted stretches, channel enables and both frame counter modes.
+    private static final int[][] WRITES = {
+            {0, 0x4015, 0x0F},
+            {10, 0x4000, 0xBF}, {12, 0x4002, 0xFD}, {14, 0x4003, 0x08},
+            {20, 0x4004, 0x4A}, {22, 0x4005, 0x9A}, {24, 0x4006, 0x80}, {26, 0x4007, 0x10},
+            {30, 0x4008, 0x81}, {32, 0x400A, 0x50}, {34, 0x400B, 0x18},
+            {40, 0x400C, 0x3F}, {42, 0x400E, 0x04}, {44, 0x400F, 0x08},
+            {30000, 0x4002, 0x40}, {45000, 0x4008, 0x00},
+            {60001, 0x4017, 0x80}, {61000, 0x4000, 0x1F}, {61002, 0x4003, 0xF8},
+            {70000, 0x4000, 0x10}, {80001, 0x4000, 0xDF}, // silent stretch, sequencer keeps running
+            {84000, 0x400C, 0x30}, {88001, 0x400C, 0x3F},
+            {90000, 0x4015, 0x05}, {95003, 0x4008, 0x00}, {95005, 0x400B, 0x00},
+            {120000, 0x4017, 0x00}, {120500, 0x400C, 0x1A}, {120502, 0x400F, 0x00},
+            {150000, 0x4015, 0x0F},
+    };
+    private static final int TOTAL_CYCLES = 180000;
+
+    /**
+     * Run {@link #WRITES} on an APU running every cycle in full, one event
+     * driven and stepped in uneven bulk chunks, and one synthesizing on its own
+     * thread, and check that they produce the same samples, frame IRQ
+     * prediction and status register.
+     */
+    public static boolean runBulkStepEquivalence() {
+        float[][] samples = new float[3][];
+        int[][] state = new int[3][2];
+        for (int m = 0; m < 3; m++) {
+            samples[m] = runScript(m, state[m]);
+        }
+        boolean audible = false;
+        for (float s : samples[0]) audible |= Math.abs(s) > 0.01f;
+        return audible && samples[0].length > 4000
+                && Arrays.equals(samples[0], samples[1]) && Arrays.equals(samples[0], samples[2])
+                && Arrays.equals(state[0], state[1]) && Arrays.equals(state[0], state[2]);
+    }
+
+    /** Mode 0: per cycle, 1: event driven in bulk, 2: bulk with deferred synthesis. */
+    private static float[] runScript(int mode, int[] state) {
+        APU apu = new APU();
+        apu.reset();
+        apu.setEventDriven(mode != 0);
+        apu.setDeferredSynthesis(mode == 2);
+        float[] out = new float[8192];
+        float[] chunk = new float[4096];
+        int count = 0;
+        int cycle = 0;
+        int seed = 12345;
+        for (int[] write : WRITES) {
+            while (cycle < write[0]) {
+                int step = 1;
+                if (mode != 0) {
+                    seed = seed * 1103515245 + 12345;
+                    step = Math.min(write[0] - cycle, 1 + ((seed >>> 16) % 700));
+                }
+                apu.stepCpuCycles(step);
+                cycle += step;
+                count += drainInto(apu, chunk, out, count);
+            }
+            apu.writeRegister(write[1], write[2]);
+        }
+        for (; cycle < TOTAL_CYCLES; cycle += 513) {
+            if (mode != 0) {
+                apu.stepCpuCycles(513); // as after OAM DMA
+            } else {
+                for (int i = 0; i < 513; i++) apu.stepCpuCycles(1);
+            }
+            count += drainInto(apu, chunk, out, count);
+        }
+        state[0] = apu.cpuCyclesUntilFrameIrq();
+        state[1] = apu.readRegister(0x4015);
+        apu.setDeferredSynthesis(false);
+        return Arrays.copyOf(out, count);
+    }
+
+    private static int drainInto(APU apu, float[] chunk, float[] out, int offset) {
+        // With deferred synthesis, hand over the batch and let it finish so the
+        // sample ring never overflows while this thread is ahead.
+        apu.endFrame();
+        apu.syncSynthesis();
+        int n = apu.drainSamples(chunk);
+        n = Math.min(n, out.length - offset);
+        System.arraycopy(chunk, 0, out, offset, n);
+        return n;
+    }
+
+    public static boolean runAll() {
+        return runBulkStepEquivalence();
+    }
+}
@@ -1,5 +1,8 @@
 package nes.model;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * The system bus that connects CPU, PPU, APU, RAM, and the cartridge mapper.
  */
@@ -12,6 +15,32 @@ public class Bus {
     private ControllerPort controller1;
     private ControllerPort controller2;
 
+    // Lazy PPU catch-up. The CPU only advances cpuClock; the PPU is run up to it
+    // when the CPU touches something the PPU can observe or be observed through,
+    // or when nextPpuEvent (the earliest cycle it could raise an NMI/IRQ) is due.
+    private boolean lazyPpuSync = true;
+    private long cpuClock;
+    private long ppuClock;
+    private long nextPpuEvent = Long.MAX_VALUE;
+
+    // 256-byte page table for $0000-$FFFF. A mapped page reads (and, if writable,
+    // writes) straight into its backing array; a null page falls back to the
+    // register and mapper handlers below.
+    private static final int PAGE_COUNT = 256;
+    private final byte[][] readPages = new byte[PAGE_COUNT][];
+    private final int[] readOffsets = new int[PAGE_COUNT];
+    private final byte[][] writePages = new byte[PAGE_COUNT][];
+    private final int[] writeOffsets = new int[PAGE_COUNT];
+
+    // Predecoded instructions for the CPU, one int[] per backing array so an entry
+    // is keyed by physical location (bank and offset) and survives bank switches.
+    // Writes through the page table invalidate the entries they could overlap.
+    private final Map<byte[], int[]> decodeArrays = new IdentityHashMap<>();
+    private final int[][] decodePages = new int[PAGE_COUNT][];
+    private final int[][] writeDecodePages = new int[PAGE_COUNT][];
+    // Bumped on every page table change so compiled CPU blocks can notice bank switches.
+    private long mappingGeneration;
+
     public Bus(CPU cpu, PPU ppu, APU apu, RAM ram) {
         this.cpu = cpu;
         this.ppu = ppu;
@@ -20,13 +49,40 @@ public class Bus {
         if (this.cpu != null) this.cpu.attachBus(this);
         if (this.ppu != null) this.ppu.attachBus(this);
         if (this.apu != null) this.apu.attachBus(this);
+        if (ram != null && ram.size() >= 0x800) {
+            // 2KB internal RAM mirrored through $0000-$1FFF
+            for (int page = 0x00; page < 0x20; page++) {
+                readPages[page] = writePages[page] = ram.array();
+                readOffsets[page] = writeOffsets[page] = (page & 0x07) << 8;
+                decodePages[page] = writeDecodePages[page] = decodeArrayFor(ram.array());
+            }
+        }
     }
 
     public int read(int address) {
         address &= 0xFFFF;
+        int page = address >>> 8;
+        byte[] mem = readPages[page];
+        if (mem != null) {
+            return mem[readOffsets[page] + (address & 0xFF)] & 0xFF;
+        }
         if (address < 0x2000) {
             return ram.read(address & 0x07FF) & 0xFF;
         }
+        if (address < 0x6000) {
+            // PPU registers, APU/IO and mapper registers all see PPU-timed state.
+            catchUpPpu();
+            int value = readRegisters(address);
+            schedulePpuEvent();
+            return value;
+        }
+        if (cartridge != null) {
+            return cartridge.getMapper().cpuRead(address) & 0xFF;
+        }
+        return 0;
+    }
+
+    private int readRegisters(int address) {
         if (address < 0x4000) {
             return ppu.readRegister(address) & 0xFF;
         }
@@ -50,23 +106,33 @@ public class Bus {
     public void write(int address, int value, long cycles) {
         address &= 0xFFFF;
         value &= 0xFF;
+        int page = address >>> 8;
+        byte[] mem = writePages[page];
+        if (mem != null) {
+            int index = writeOffsets[page] + (address & 0xFF);
+            mem[index] = (byte) value;
+            invalidateDecoded(writeDecodePages[page], index);
+            return;
+        }
         if (address < 0x2000) {
             ram.write(address & 0x07FF, value);
             return;
         }
+        // Any register or cartridge write may change what the PPU renders or
+        // when it raises an interrupt, so run it up to now first.
+        catchUpPpu();
+        writeRegisters(address, value, cycles);
+        schedulePpuEvent();
+    }
+
+    private void writeRegisters(int address, int value, long cycles) {
         if (address < 0x4000) {
             ppu.writeRegister(address, value);
             return;
         }
         if (address < 0x4020) {
             if (address == 0x4014) {
-                int base = value << 8;
-                for (int i = 0; i < 256; i++) {
-                    ppu.oamDmaWrite(read((base + i) & 0xFFFF));
-                }
-                ppu.stepCpuCycles(513);
-                if (apu != null) apu.stepCpuCycles(513);
-                if (cpu != null) cpu.stall(513);
+                oamDma(value);
                 return;
             }
             if (address == 0x4016) {
@@ -90,6 +156,31 @@ public class Bus {
         if (cpu != null) cpu.nmi();
     }
     
+    /**
+     * OAM DMA from CPU page {@code page}. RAM and directly mapped PRG pages
+     * are copied in one go; register and mapper-handled pages are read byte
+     * by byte through the normal dispatch, side effects included. The CPU
+     * then stalls for 513 cycles, or 514 when the $4014 write fell on an odd
+     * cycle and the DMA unit had to wait one more for alignment.
+     */
+    private void oamDma(int page) {
+        byte[] mem = readPages[page];
+        if (mem != null) {
+            ppu.oamDmaPage(mem, readOffsets[page]);
+        } else {
+            int base = page << 8;
+            for (int i = 0; i < 256; i++) {
+                ppu.oamDmaWrite(read(base + i));
+            }
+        }
+        int stall = 513 + (int) (cpuClock & 1);
+        // The PPU owes the stall cycles; it runs them on the next catch-up.
+        cpuClock += stall;
+        if (!lazyPpuSync) catchUpPpu();
+        if (apu != null) apu.stepCpuCycles(stall);
+        if (cpu != null) cpu.stall(stall);
+    }
+
     public void requestIrq() {
         if (cpu != null) cpu.irq();
     }
@@ -98,8 +189,86 @@ public class Bus {
         if (cpu != null) cpu.clearIrq();
     }
 
+    /**
+     * Point the CPU pages covering [address, address + size) straight at data,
+     * starting at offset and wrapping within data. Reads become a single array
+     * load; writes too when writable, otherwise they still reach the mapper.
+     * Mappers call this whenever a bank switch or RAM enable changes a window.
+     */
+    public void mapCpuPages(int address, int size, byte[] data, int offset, boolean writable) {
+        if (data == null || data.length == 0) {
+            unmapCpuPages(address, size);
+            return;
+        }
+        mappingGeneration++;
+        int first = (address & 0xFFFF) >>> 8;
+        int count = size >>> 8;
+        for (int i = 0; i < count; i++) {
+            int page = first + i;
+            int pageOffset = (int) (((long) offset + ((long) i << 8)) % data.length);
+            if (pageOffset + 0x100 > data.length) {
+                readPages[page] = writePages[page] = null;
+                decodePages[page] = writeDecodePages[page] = null;
+                continue;
+            }
+            int[] decoded = decodeArrayFor(data);
+            readPages[page] = data;
+            readOffsets[page] = pageOffset;
+            decodePages[page] = decoded;
+            writePages[page] = writable ? data : null;
+            writeOffsets[page] = writable ? pageOffset : 0;
+            writeDecodePages[page] = writable ? decoded : null;
+        }
+    }
+
+    /** Send CPU accesses to [address, address + size) back to the mapper handlers. */
+    public void unmapCpuPages(int address, int size) {
+        mappingGeneration++;
+        int first = (address & 0xFFFF) >>> 8;
+        int count = size >>> 8;
+        for (int i = 0; i < count; i++) {
+            readPages[first + i] = null;
+            writePages[first + i] = null;
+            decodePages[first + i] = null;
+            writeDecodePages[first + i] = null;
+        }
+    }
+
+    /**
+     * For mappers that store into memory behind the page table (a write path
+     * that is not mapped writable): drop predecoded instructions overlapping
+     * data[offset].
+     */
+    public void invalidateDecoded(byte[] data, int offset) {
+        int[] decoded = decodeArrays.get(data);
+        if (decoded != null) {
+            invalidateDecoded(decoded, offset);
+        }
+    }
+
+    private static void invalidateDecoded(int[] decoded, int index) {
+        // The written byte may be the opcode or either operand of a cached entry.
+        decoded[index] = 0;
+        if (index >= 1) decoded[index - 1] = 0;
+        if (index >= 2) decoded[index - 2] = 0;
+    }
+
+    private int[] decodeArrayFor(byte[] data) {
+        return decodeArrays.computeIfAbsent(data, d -> new int[d.length]);
+    }
+
+    // Page table views for the CPU's instruction fetch.
+    int[] decodedPage(int page) { return decodePages[page]; }
+    byte[] readPage(int page) { return readPages[page]; }
+    int readOffset(int page) { return readOffsets[page]; }
+    long getMappingGeneration() { return mappingGeneration; }
+    byte[] getPrgRom() { return (cartridge != null) ? cartridge.getPrgRom() : null; }
+
     public void setCartridge(Cartridge cart) {
         this.cartridge = cart;
+        unmapCpuPages(0x4000, 0xC000);
+        byte[] ramArray = (ram != null) ? ram.array() : null;
+        decodeArrays.keySet().removeIf(data -> data != ramArray);
         if (cart != null) {
             cart.getMapper().setBus(this);
         }
@@ -111,11 +280,87 @@ public class Bus {
     }
 
     public void onCpuCycle() {
-        if (ppu != null) {
-            ppu.stepCpuCycles(1);
+        cpuClock++;
+        if (!lazyPpuSync) {
+            catchUpPpu();
         }
         if (apu != null) {
             apu.stepCpuCycles(1);
         }
     }
+
+    /**
+     * Choose between lazy catch-up (default) and stepping the PPU on every CPU
+     * cycle. Both produce identical frames; the per-cycle path is kept for
+     * comparison.
+     */
+    public void setLazyPpuSync(boolean lazy) {
+        syncPpu();
+        this.lazyPpuSync = lazy;
+        schedulePpuEvent();
+    }
+
+    public boolean isLazyPpuSync() { return lazyPpuSync; }
+
+    /** CPU cycles since power-on, DMA stalls included. */
+    long getCpuClock() { return cpuClock; }
+
+    /** Run the PPU up to the current CPU cycle and predict its next event. */
+    public void syncPpu() {
+        catchUpPpu();
+        schedulePpuEvent();
+    }
+
+    /** Called by the CPU before each instruction so NMI/IRQ lines are current. */
+    void pollPpuEvents() {
+        if (cpuClock >= nextPpuEvent) {
+            syncPpu();
+        }
+    }
+
+    /**
+     * Advance over CPU cycles the CPU fast-forwarded through in an idle loop.
+     * Nothing was read or written, so the APU runs the stretch in one call and
+     * the PPU catches up as usual.
+     */
+    void skipCpuCycles(int count) {
+        cpuClock += count;
+        if (!lazyPpuSync) {
+            catchUpPpu();
+        }
+        if (apu != null) {
+            apu.stepCpuCycles(count);
+        }
+    }
+
+    /** CPU cycles until the PPU could next raise NMI/IRQ, measured from now. */
+    int cpuCyclesUntilPpuEvent() {
+        catchUpPpu();
+        return (ppu != null) ? ppu.cpuCyclesUntilNextEvent() : Integer.MAX_VALUE;
+    }
+
+    /** CPU cycles until the APU frame counter next asserts IRQ. */
+    int cpuCyclesUntilApuIrq() {
+        return (apu != null) ? apu.cpuCyclesUntilFrameIrq() : Integer.MAX_VALUE;
+    }
+
+    /** The PPU's vblank flag as a $2002 read would see it now, without the read side effects. */
+    boolean isPpuInVBlank() {
+        catchUpPpu();
+        return ppu != null && ppu.isVBlankFlagSet();
+    }
+
+    private void catchUpPpu() {
+        long behind = cpuClock - ppuClock;
+        if (behind > 0) {
+            ppuClock = cpuClock;
+            if (ppu != null) ppu.stepCpuCycles((int) behind);
+        }
+    }
+
+    private void schedulePpuEvent() {
+        nextPpuEvent = (ppu != null && lazyPpuSync)
+                ? ppuClock + ppu.cpuCyclesUntilNextEvent()
+                : Long.MAX_VALUE;
+    }
 }
@@ -1,5 +1,7 @@
 package nes.model;
 
+import java.util.Arrays;
+
 /**
  * Ricoh 2A03/2A07 CPU (6502 derivative)
  * This version includes more accurate cycle counting for addressing modes.
@@ -24,6 +26,30 @@ public class CPU {
     private int cyclesThisInstruction;
     private boolean isAccumulatorMode;
 
+    /**
+     * Selects how opcodes are decoded; both paths execute the same handlers.
+     * The switch stays the default because it measures faster in --cpu-bench.
+     */
+    public enum Dispatch { TABLE, SWITCH }
+    private Dispatch dispatch = Dispatch.SWITCH;
+
+    // Predecode cache: operand bytes of the current instruction when it came from
+    // the bus decode arrays, consumed low byte first by fetchByte().
+    private boolean decodeCache = true;
+    private int prefetched;
+    private int prefetchedCount;
+    private long decodeHits;
+    private long decodeMisses;
+
+    /** Interpret every instruction, or run hot PRG ROM blocks through {@link Recompiler}. */
+    public enum Execution { INTERPRETER, RECOMPILER }
+    private Execution execution = Execution.INTERPRETER;
+    private final Recompiler recompiler = new Recompiler();
+
+    // Idle-loop fast-forward: cycles skipped instead of re-running wait loops.
+    private boolean idleLoopSkip = true;
+    private long idleCyclesSkipped;
+
     public CPU() {
         // Do not call reset() here because bus is not attached yet.
         // Initialize registers to safe defaults.
@@ -36,6 +62,19 @@ public class CPU {
     
     void attachBus(Bus bus) { this.bus = bus; }
     public long getCycles() { return cycles; }
+    public void setDispatch(Dispatch dispatch) { this.dispatch = dispatch; }
+    public Dispatch getDispatch() { return dispatch; }
+    public void setDecodeCache(boolean enabled) { this.decodeCache = enabled; }
+    public boolean isDecodeCache() { return decodeCache; }
+    public long getDecodeHits() { return decodeHits; }
+    public long getDecodeMisses() { return decodeMisses; }
+    public void resetDecodeStats() { decodeHits = 0; decodeMisses = 0; }
+    public void setExecution(Execution execution) { this.execution = execution; }
+    public Execution getExecution() { return execution; }
+    public long getCompiledBlocks() { return recompiler.getCompiledBlocks(); }
+    public void setIdleLoopSkip(boolean enabled) { this.idleLoopSkip = enabled; }
+    public boolean isIdleLoopSkip() { return idleLoopSkip; }
+    public long getIdleCyclesSkipped() { return idleCyclesSkipped; }
 
     public void reset() {
         a = x = y = 0;
@@ -60,6 +99,7 @@ public class CPU {
     }
 
     public int stepInstruction() {
+        bus.pollPpuEvents();
         cyclesThisInstruction = 0;
         isAccumulatorMode = false; // Reset mode flag for each instruction
 
@@ -78,8 +118,12 @@ public class CPU {
             pc = read16(0xFFFE);
             tick(); tick(); // 2 internal cycles for interrupt
         } else {
-            int opcode = read8(pc++);
-            executeOpcode(opcode);
+            int opcode = fetchOpcode();
+            if (dispatch == Dispatch.TABLE) {
+                executeOpcode(opcode);
+            } else {
+                executeOpcodeSwitch(opcode);
+            }
         }
         
         cycles += cyclesThisInstruction + stallCycles;
@@ -88,7 +132,140 @@ public class CPU {
         return totalCycles;
     }
 
+    /**
+     * Run instructions until at least {@code budget} cycles have elapsed and return
+     * the cycles used. Stops at the same instruction a loop over stepInstruction()
+     * would, so both execution modes see identical frame boundaries.
+     */
+    public int step(int budget) {
+        int used = 0;
+        while (used < budget) {
+            int start = pc;
+            Recompiler.Block block = (execution == Execution.RECOMPILER) ? recompiler.blockAt(bus, pc) : null;
+            used += (block != null) ? runBlock(block, budget - used) : stepInstruction();
+            // A short jump back (JMP * or a load/branch pair) may be a wait loop.
+            if (idleLoopSkip && pc <= start && start - pc <= 3 && used < budget) {
+                used += skipIdleLoop(budget - used);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Fast-forward through a wait loop at pc: whole iterations are skipped by
+     * advancing the clocks in bulk, up to the earliest cycle the PPU could raise
+     * NMI/IRQ, the APU frame IRQ (when I is clear), or the end of the budget.
+     * The last iteration that fits is left to run for real, so registers and
+     * flags come from a genuine read before anything can observe them.
+     */
+    private int skipIdleLoop(int remaining) {
+        int window = Math.min(remaining - 1, bus.cpuCyclesUntilPpuEvent()); // PPU caught up first
+        if (nmiDetected || (irqDetected && !flag(I))) return 0;
+        int length = idleLoopLength(pc);
+        if (length == 0) return 0;
+        if (!flag(I)) window = Math.min(window, bus.cpuCyclesUntilApuIrq());
+        int iterations = window / length - 1;
+        if (iterations <= 0) return 0;
+        int skipped = iterations * length;
+        bus.skipCpuCycles(skipped);
+        cycles += skipped;
+        idleCyclesSkipped += skipped;
+        return skipped;
+    }
+
+    /**
+     * Cycles per iteration if the code at address is a loop that can only be left
+     * through an interrupt or a PPU event, otherwise 0. Recognised forms are
+     * {@code JMP *}, {@code LDA/BIT $2002 + BPL} waiting for vblank, and
+     * LDA/LDX/LDY/BIT of RAM followed by a branch back, polling a variable that
+     * only an interrupt handler can change. The branch must be taken for the
+     * value read now.
+     */
+    private int idleLoopLength(int address) {
+        int page = address >>> 8;
+        byte[] memory = bus.readPage(page);
+        if (memory == null || (address & 0xFF) > 0xFB) return 0;
+        int i = bus.readOffset(page) + (address & 0xFF);
+        int opcode = memory[i] & 0xFF;
+        if (opcode == 0x4C) {
+            int target = (memory[i + 1] & 0xFF) | (memory[i + 2] & 0xFF) << 8;
+            return (target == address) ? 3 : 0;
+        }
+        int size, base;
+        switch (opcode) {
+            case 0xA5: case 0xA6: case 0xA4: case 0x24: size = 2; base = 3; break; // zp
+            case 0xAD: case 0xAE: case 0xAC: case 0x2C: size = 3; base = 4; break; // abs
+            default: return 0;
+        }
+        int operand = memory[i + 1] & 0xFF;
+        if (size == 3) operand |= (memory[i + 2] & 0xFF) << 8;
+        int branch = memory[i + size] & 0xFF;
+        int next = address + size + 2;
+        if (((next + memory[i + size + 1]) & 0xFFFF) != address) return 0;
+
+        int value;
+        if (operand < 0x2000) {
+            byte[] ramPage = bus.readPage(operand >>> 8);
+            if (ramPage == null) return 0;
+            value = ramPage[bus.readOffset(operand >>> 8) + (operand & 0xFF)] & 0xFF;
+        } else if ((operand & 0xE007) == 0x2002 && branch == 0x10) {
+            value = bus.isPpuInVBlank() ? 0x80 : 0; // only bit 7 decides BPL
+        } else {
+            return 0;
+        }
+        boolean negative = (value & 0x80) != 0;
+        boolean zero = (opcode == 0x24 || opcode == 0x2C) ? (a & value) == 0 : value == 0;
+        boolean taken;
+        switch (branch) {
+            case 0x10: taken = !negative; break; // BPL
+            case 0x30: taken = negative; break;  // BMI
+            case 0xD0: taken = !zero; break;     // BNE
+            case 0xF0: taken = zero; break;      // BEQ
+            default: return 0;
+        }
+        if (!taken) return 0;
+        return base + 3 + (((next ^ address) & 0xFF00) != 0 ? 1 : 0);
+    }
+
+    /**
+     * Execute a compiled block instruction by instruction, with the same
+     * interrupt and PPU-event checks stepInstruction() makes before each one.
+     * Leaves early when an interrupt is pending, the budget is spent, or a
+     * mapper write changed the CPU page table (a bank switch).
+     */
+    private int runBlock(Recompiler.Block block, int budget) {
+        Recompiler.Step[] steps = block.steps;
+        long mapping = bus.getMappingGeneration();
+        int used = 0;
+        for (int i = 0; i < steps.length; i++) {
+            if (i > 0 && (used >= budget || bus.getMappingGeneration() != mapping)) break;
+            bus.pollPpuEvents();
+            if (nmiDetected || (irqDetected && !flag(I))) {
+                return (i == 0) ? stepInstruction() : used;
+            }
+            cyclesThisInstruction = 0;
+            isAccumulatorMode = false;
+            prefetchedCount = 0;
+            steps[i].run(this);
+            int total = cyclesThisInstruction + stallCycles;
+            cycles += total;
+            stallCycles = 0;
+            used += total;
+        }
+        return used;
+    }
+
     private void executeOpcode(int opcode) {
+        Opcode op = OPCODES[opcode];
+        op.mode.fetch(this);
+        op.operation.execute(this);
+    }
+
+    /**
+     * The original switch-based decoder. Kept as the reference implementation for
+     * {@link Dispatch#SWITCH}, which the self-test and benchmark compare against the table.
+     */
+    private void executeOpcodeSwitch(int opcode) {
         switch (opcode) {
             // ADC
             case 0x69: immediate(); ADC(); break; case 0x65: zp(); ADC(); break;
@@ -210,6 +387,71 @@ public class CPU {
     }
 
     // --- Memory Helpers ---
+
+    /**
+     * Fetch the opcode at pc. With the decode cache on, an instruction lying wholly
+     * inside a directly mapped page is served from the bus decode array for its
+     * backing memory (filled on first use), so the opcode and operand bytes cost no
+     * bus reads. The bus cycles are still ticked one per byte, as before.
+     */
+    private int fetchOpcode() {
+        prefetchedCount = 0;
+        if (decodeCache) {
+            int addr = pc & 0xFFFF;
+            int page = addr >>> 8;
+            int[] decoded = bus.decodedPage(page);
+            if (decoded != null) {
+                int index = bus.readOffset(page) + (addr & 0xFF);
+                int entry = decoded[index];
+                if (entry != 0) {
+                    decodeHits++;
+                } else {
+                    decodeMisses++;
+                    entry = decode(bus.readPage(page), index, addr & 0xFF);
+                    decoded[index] = entry;
+                }
+                if (entry != 0) {
+                    tick();
+                    pc++;
+                    prefetched = (entry >>> 8) & 0xFFFF;
+                    prefetchedCount = (entry >>> 24) - 1;
+                    return entry & 0xFF;
+                }
+            } else {
+                decodeMisses++;
+            }
+        }
+        return read8(pc++);
+    }
+
+    /**
+     * Pack opcode, operands and length (which also marks the entry valid) as
+     * {@code length << 24 | operands << 8 | opcode}, or 0 if the instruction
+     * runs past the end of its page and must be fetched byte by byte.
+     */
+    private static int decode(byte[] memory, int index, int pageOffset) {
+        int opcode = memory[index] & 0xFF;
+        int length = LENGTHS[opcode];
+        if (pageOffset + length > 0x100) return 0;
+        int operands = 0;
+        if (length > 1) operands = memory[index + 1] & 0xFF;
+        if (length > 2) operands |= (memory[index + 2] & 0xFF) << 8;
+        return (length << 24) | (operands << 8) | opcode;
+    }
+
+    /** Read the next instruction byte at pc, from the predecoded operands when present. */
+    private int fetchByte() {
+        if (prefetchedCount > 0) {
+            prefetchedCount--;
+            tick();
+            pc++;
+            int value = prefetched & 0xFF;
+            prefetched >>>= 8;
+            return value;
+        }
+        return read8(pc++);
+    }
+
     private int read8(int addr) {
         cyclesThisInstruction++;
         bus.onCpuCycle();
@@ -236,31 +478,32 @@ public class CPU {
     }
 
     // --- Addressing Modes ---
+    private void implied() { }
     private void accumulator() { fetchedValue = a; isAccumulatorMode = true; }
-    private void immediate() { fetchedValue = read8(pc++); }
-    private void zp() { fetchedAddr = read8(pc++); fetchedValue = read8(fetchedAddr); }
-    private void zpX() { fetchedAddr = (read8(pc++) + x) & 0xFF; read8(fetchedAddr); fetchedValue = read8(fetchedAddr); }
-    private void zpY() { fetchedAddr = (read8(pc++) + y) & 0xFF; read8(fetchedAddr); fetchedValue = read8(fetchedAddr); }
-    private void abs() { int lo = read8(pc++); int hi = read8(pc++); fetchedAddr = (hi << 8) | lo; fetchedValue = read8(fetchedAddr); }
-    private void absX(boolean extraCycle) { int lo = read8(pc++); int hi = read8(pc++); int base = (hi << 8) | lo; fetchedAddr = (base + x) & 0xFFFF; fetchedValue = read8(fetchedAddr); if (extraCycle && (base & 0xFF00) != (fetchedAddr & 0xFF00)) tick(); }
-    private void absY(boolean extraCycle) { int lo = read8(pc++); int hi = read8(pc++); int base = (hi << 8) | lo; fetchedAddr = (base + y) & 0xFFFF; fetchedValue = read8(fetchedAddr); if (extraCycle && (base & 0xFF00) != (fetchedAddr & 0xFF00)) tick(); }
-    private void indX() { int zp = read8(pc++); read8(zp); int addr = (zp + x) & 0xFF; int lo = read8(addr); int hi = read8((addr + 1) & 0xFF); fetchedAddr = (hi << 8) | lo; fetchedValue = read8(fetchedAddr); }
-    private void indY(boolean extraCycle) { int zp = read8(pc++); int lo = read8(zp); int hi = read8((zp + 1) & 0xFF); int base = (hi << 8) | lo; fetchedAddr = (base + y) & 0xFFFF; fetchedValue = read8(fetchedAddr); if (extraCycle && (base & 0xFF00) != (fetchedAddr & 0xFF00)) tick(); }
+    private void immediate() { fetchedValue = fetchByte(); }
+    private void zp() { fetchedAddr = fetchByte(); fetchedValue = read8(fetchedAddr); }
+    private void zpX() { fetchedAddr = (fetchByte() + x) & 0xFF; read8(fetchedAddr); fetchedValue = read8(fetchedAddr); }
+    private void zpY() { fetchedAddr = (fetchByte() + y) & 0xFF; read8(fetchedAddr); fetchedValue = read8(fetchedAddr); }
+    private void abs() { int lo = fetchByte(); int hi = fetchByte(); fetchedAddr = (hi << 8) | lo; fetchedValue = read8(fetchedAddr); }
+    private void absX(boolean extraCycle) { int lo = fetchByte(); int hi = fetchByte(); int base = (hi << 8) | lo; fetchedAddr = (base + x) & 0xFFFF; fetchedValue = read8(fetchedAddr); if (extraCycle && (base & 0xFF00) != (fetchedAddr & 0xFF00)) tick(); }
+    private void absY(boolean extraCycle) { int lo = fetchByte(); int hi = fetchByte(); int base = (hi << 8) | lo; fetchedAddr = (base + y) & 0xFFFF; fetchedValue = read8(fetchedAddr); if (extraCycle && (base & 0xFF00) != (fetchedAddr & 0xFF00)) tick(); }
+    private void indX() { int zp = fetchByte(); read8(zp); int addr = (zp + x) & 0xFF; int lo = read8(addr); int hi = read8((addr + 1) & 0xFF); fetchedAddr = (hi << 8) | lo; fetchedValue = read8(fetchedAddr); }
+    private void indY(boolean extraCycle) { int zp = fetchByte(); int lo = read8(zp); int hi = read8((zp + 1) & 0xFF); int base = (hi << 8) | lo; fetchedAddr = (base + y) & 0xFFFF; fetchedValue = read8(fetchedAddr); if (extraCycle && (base & 0xFF00) != (fetchedAddr & 0xFF00)) tick(); }
     
-    private void zpAddr() { fetchedAddr = read8(pc++); }
-    private void zpXAddr() { fetchedAddr = (read8(pc++) + x) & 0xFF; read8(fetchedAddr); }
-    private void zpYAddr() { fetchedAddr = (read8(pc++) + y) & 0xFF; read8(fetchedAddr); }
-    private void absAddr() { int lo = read8(pc++); int hi = read8(pc++); fetchedAddr = (hi << 8) | lo; }
-    private void absXAddr(boolean dummyRead) { int lo = read8(pc++); int hi = read8(pc++); int base = (hi << 8) | lo; fetchedAddr = (base + x) & 0xFFFF; if (dummyRead || (base & 0xFF00) != (fetchedAddr & 0xFF00)) read8(fetchedAddr); }
-    private void absYAddr(boolean dummyRead) { int lo = read8(pc++); int hi = read8(pc++); int base = (hi << 8) | lo; fetchedAddr = (base + y) & 0xFFFF; if (dummyRead || (base & 0xFF00) != (fetchedAddr & 0xFF00)) read8(fetchedAddr); }
-    private void indXAddr() { int zp = read8(pc++); read8(zp); int addr = (zp + x) & 0xFF; int lo = read8(addr); int hi = read8((addr + 1) & 0xFF); fetchedAddr = (hi << 8) | lo; }
-    private void indYAddr(boolean dummyRead) { int zp = read8(pc++); int lo = read8(zp); int hi = read8((zp + 1) & 0xFF); int base = (hi << 8) | lo; fetchedAddr = (base + y) & 0xFFFF; if (dummyRead || (base & 0xFF00) != (fetchedAddr & 0xFF00)) read8(fetchedAddr); }
+    private void zpAddr() { fetchedAddr = fetchByte(); }
+    private void zpXAddr() { fetchedAddr = (fetchByte() + x) & 0xFF; read8(fetchedAddr); }
+    private void zpYAddr() { fetchedAddr = (fetchByte() + y) & 0xFF; read8(fetchedAddr); }
+    private void absAddr() { int lo = fetchByte(); int hi = fetchByte(); fetchedAddr = (hi << 8) | lo; }
+    private void absXAddr(boolean dummyRead) { int lo = fetchByte(); int hi = fetchByte(); int base = (hi << 8) | lo; fetchedAddr = (base + x) & 0xFFFF; if (dummyRead || (base & 0xFF00) != (fetchedAddr & 0xFF00)) read8(fetchedAddr); }
+    private void absYAddr(boolean dummyRead) { int lo = fetchByte(); int hi = fetchByte(); int base = (hi << 8) | lo; fetchedAddr = (base + y) & 0xFFFF; if (dummyRead || (base & 0xFF00) != (fetchedAddr & 0xFF00)) read8(fetchedAddr); }
+    private void indXAddr() { int zp = fetchByte(); read8(zp); int addr = (zp + x) & 0xFF; int lo = read8(addr); int hi = read8((addr + 1) & 0xFF); fetchedAddr = (hi << 8) | lo; }
+    private void indYAddr(boolean dummyRead) { int zp = fetchByte(); int lo = read8(zp); int hi = read8((zp + 1) & 0xFF); int base = (hi << 8) | lo; fetchedAddr = (base + y) & 0xFFFF; if (dummyRead || (base & 0xFF00) != (fetchedAddr & 0xFF00)) read8(fetchedAddr); }
 
     // --- Instructions ---
     private void ADC() { int sum = a + fetchedValue + (flag(C) ? 1 : 0); setFlag(C, sum > 0xFF); setFlag(V, (~(a ^ fetchedValue) & (a ^ sum) & 0x80) != 0); a = sum & 0xFF; setZN(a); }
     private void AND() { a &= fetchedValue; setZN(a); }
     private void ASL() { tick(); if (isAccumulatorMode) { setFlag(C, (a & 0x80) != 0); a = (a << 1) & 0xFF; setZN(a); } else { int val = fetchedValue; setFlag(C, (val & 0x80) != 0); val = (val << 1) & 0xFF; write8(fetchedAddr, val); setZN(val); } }
-    private void branch(boolean cond) { if (cond) { tick(); int offset = (byte)read8(pc++); int oldPc = pc; pc = (pc + offset) & 0xFFFF; if ((oldPc & 0xFF00) != (pc & 0xFF00)) tick(); } else { read8(pc++); } }
+    private void branch(boolean cond) { if (cond) { tick(); int offset = (byte)fetchByte(); int oldPc = pc; pc = (pc + offset) & 0xFFFF; if ((oldPc & 0xFF00) != (pc & 0xFF00)) tick(); } else { fetchByte(); } }
     private void BIT() { setFlag(Z, (a & fetchedValue) == 0); setFlag(V, (fetchedValue & V) != 0); setFlag(N, (fetchedValue & N) != 0); }
     private void BRK() { pc++; push16(pc); push(p | B | U); setFlag(I, true); pc = read16(0xFFFE); }
     private void CLC() { tick(); setFlag(C, false); } private void CLD() { tick(); setFlag(D, false); }
@@ -271,9 +514,9 @@ public class CPU {
     private void DEC() { int val = (fetchedValue - 1) & 0xFF; write8(fetchedAddr, val); setZN(val); }
     private void EOR() { a ^= fetchedValue; setZN(a); }
     private void INC() { int val = (fetchedValue + 1) & 0xFF; write8(fetchedAddr, val); setZN(val); }
-    private void JMP_abs() { int lo = read8(pc++); int hi = read8(pc++); pc = (hi << 8) | lo; }
-    private void JMP_ind() { int lo = read8(pc++); int hi = read8(pc++); int addr = (hi << 8) | lo; pc = read16Bug(addr); }
-    private void JSR() { int lo = read8(pc++); int hi = read8(pc++); push16(pc - 1); pc = (hi << 8) | lo; tick(); }
+    private void JMP_abs() { int lo = fetchByte(); int hi = fetchByte(); pc = (hi << 8) | lo; }
+    private void JMP_ind() { int lo = fetchByte(); int hi = fetchByte(); int addr = (hi << 8) | lo; pc = read16Bug(addr); }
+    private void JSR() { int lo = fetchByte(); int hi = fetchByte(); push16(pc - 1); pc = (hi << 8) | lo; tick(); }
     private void LDA() { a = fetchedValue; setZN(a); }
     private void LDX() { x = fetchedValue; setZN(x); }
     private void LDY() { y = fetchedValue; setZN(y); }
@@ -304,4 +547,264 @@ public class CPU {
     private void INY() { y = (y + 1) & 0xFF; setZN(y); tick(); }
     private void DEX() { x = (x - 1) & 0xFF; setZN(x); tick(); }
     private void DEY() { y = (y - 1) & 0xFF; setZN(y); tick(); }
+
+    // --- Recompiler support ---
+
+    /** Whether this opcode transfers control, which ends a compiled block. */
+    static boolean endsBlock(int opcode) {
+        switch (opcode) {
+            case 0x10: case 0x30: case 0x50: case 0x70:
+            case 0x90: case 0xB0: case 0xD0: case 0xF0:
+            case 0x00: case 0x20: case 0x40: case 0x4C: case 0x60: case 0x6C:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Bind one instruction at {@code address} with its operand bytes into a step.
+     * Every step ticks the bus exactly as the interpreter does: one cycle per
+     * instruction byte, then the same reads, writes and internal cycles. Common
+     * forms get the operand and effective address folded in; the rest replay the
+     * predecoded operands through the dispatch table.
+     */
+    static Recompiler.Step compile(int opcode, int operands, int address) {
+        final Opcode op = OPCODES[opcode];
+        final Operation operation = op.operation;
+        final int length = LENGTHS[opcode];
+        final int next = address + length;
+        final int lo = operands & 0xFF;
+
+        switch (opcode) {
+            // Immediate
+            case 0x69: case 0x29: case 0xC9: case 0xE0: case 0xC0: case 0x49:
+            case 0xA9: case 0xA2: case 0xA0: case 0x09: case 0xE9: case 0xEB:
+                return cpu -> { cpu.tick(); cpu.tick(); cpu.pc = next; cpu.fetchedValue = lo; operation.execute(cpu); };
+            // Zero page (read and read-modify-write)
+            case 0x65: case 0x25: case 0x06: case 0x24: case 0xC5: case 0xE4: case 0xC4:
+            case 0xC6: case 0x45: case 0xE6: case 0xA5: case 0xA6: case 0xA4: case 0x46:
+            case 0x05: case 0x26: case 0x66: case 0xE5:
+                return cpu -> { cpu.tick(); cpu.tick(); cpu.pc = next; cpu.fetchedAddr = lo; cpu.fetchedValue = cpu.read8(lo); operation.execute(cpu); };
+            // Absolute (read and read-modify-write)
+            case 0x6D: case 0x2D: case 0x0E: case 0x2C: case 0xCD: case 0xEC: case 0xCC:
+            case 0xCE: case 0x4D: case 0xEE: case 0xAD: case 0xAE: case 0xAC: case 0x4E:
+            case 0x0D: case 0x2E: case 0x6E: case 0xED:
+                return cpu -> { cpu.tick(); cpu.tick(); cpu.tick(); cpu.pc = next; cpu.fetchedAddr = operands; cpu.fetchedValue = cpu.read8(operands); operation.execute(cpu); };
+            // Stores
+            case 0x85: case 0x86: case 0x84:
+                return cpu -> { cpu.tick(); cpu.tick(); cpu.pc = next; cpu.fetchedAddr = lo; operation.execute(cpu); };
+            case 0x8D: case 0x8E: case 0x8C:
+                return cpu -> { cpu.tick(); cpu.tick(); cpu.tick(); cpu.pc = next; cpu.fetchedAddr = operands; operation.execute(cpu); };
+            // Branches: flag selected by the top two bits, expected value by bit 5
+            case 0x10: case 0x30: case 0x50: case 0x70: case 0x90: case 0xB0: case 0xD0: case 0xF0: {
+                final int mask = new int[] { N, V, C, Z }[opcode >> 6];
+                final boolean expected = (opcode & 0x20) != 0;
+                final int target = (next + (byte) lo) & 0xFFFF;
+                final boolean crossesPage = (next & 0xFF00) != (target & 0xFF00);
+                return cpu -> {
+                    cpu.tick();
+                    if (cpu.flag(mask) == expected) {
+                        cpu.tick(); cpu.tick();
+                        cpu.pc = target;
+                        if (crossesPage) cpu.tick();
+                    } else {
+                        cpu.tick();
+                        cpu.pc = next;
+                    }
+                };
+            }
+            case 0x4C:
+                return cpu -> { cpu.tick(); cpu.tick(); cpu.tick(); cpu.pc = operands; };
+            // Implied one-byte instructions
+            case 0x18: case 0x38: case 0x58: case 0x78: case 0xB8: case 0xD8: case 0xF8:
+            case 0xAA: case 0xA8: case 0x8A: case 0x98: case 0xBA: case 0x9A:
+            case 0xE8: case 0xC8: case 0xCA: case 0x88: case 0xEA:
+            case 0x48: case 0x68: case 0x08: case 0x28:
+                return cpu -> { cpu.tick(); cpu.pc = next; operation.execute(cpu); };
+            default: {
+                final AddressingMode mode = op.mode;
+                return cpu -> {
+                    cpu.tick();
+                    cpu.pc = address + 1;
+                    cpu.prefetched = operands;
+                    cpu.prefetchedCount = length - 1;
+                    mode.fetch(cpu);
+                    operation.execute(cpu);
+                };
+            }
+        }
+    }
+
+    // --- Dispatch table ---
+
+    @FunctionalInterface
+    interface AddressingMode { void fetch(CPU cpu); }
+
+    @FunctionalInterface
+    interface Operation { void execute(CPU cpu); }
+
+    /**
+     * One entry of the 256-opcode dispatch table. Cycles come from the reads,
+     * writes and tick() calls made by the mode and the operation.
+     */
+    static final class Opcode {
+        final AddressingMode mode;
+        final Operation operation;
+
+        Opcode(AddressingMode mode, Operation operation) {
+            this.mode = mode;
+            this.operation = operation;
+        }
+    }
+
+    static final Opcode[] OPCODES = new Opcode[256];
+
+    /** Instruction length in bytes (opcode plus operands) as fetched by this core. */
+    static final int[] LENGTHS = {
+            1, 2, 1, 1, 1, 2, 2, 1, 1, 2, 1, 1, 1, 3, 3, 1, // 0_
+            2, 2, 1, 1, 1, 2, 2, 1, 1, 3, 1, 1, 1, 3, 3, 1, // 1_
+            3, 2, 1, 1, 2, 2, 2, 1, 1, 2, 1, 1, 3, 3, 3, 1, // 2_
+            2, 2, 1, 1, 1, 2, 2, 1, 1, 3, 1, 1, 1, 3, 3, 1, // 3_
+            1, 2, 1, 1, 1, 2, 2, 1, 1, 2, 1, 1, 3, 3, 3, 1, // 4_
+            2, 2, 1, 1, 1, 2, 2, 1, 1, 3, 1, 1, 1, 3, 3, 1, // 5_
+            1, 2, 1, 1, 1, 2, 2, 1, 1, 2, 1, 1, 3, 3, 3, 1, // 6_
+            2, 2, 1, 1, 1, 2, 2, 1, 1, 3, 1, 1, 1, 3, 3, 1, // 7_
+            1, 2, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 3, 3, 3, 1, // 8_
+            2, 2, 1, 1, 2, 2, 2, 1, 1, 3, 1, 1, 1, 3, 1, 1, // 9_
+            2, 2, 2, 1, 2, 2, 2, 1, 1, 2, 1, 1, 3, 3, 3, 1, // A_
+            2, 2, 1, 1, 2, 2, 2, 1, 1, 3, 1, 1, 3, 3, 3, 1, // B_
+            2, 2, 1, 1, 2, 2, 2, 1, 1, 2, 1, 1, 3, 3, 3, 1, // C_
+            2, 2, 1, 1, 1, 2, 2, 1, 1, 3, 1, 1, 1, 3, 3, 1, // D_
+            2, 2, 1, 1, 2, 2, 2, 1, 1, 2, 1, 2, 3, 3, 3, 1, // E_
+            2, 2, 1, 1, 1, 2, 2, 1, 1, 3, 1, 1, 1, 3, 3, 1, // F_
+    };
+
+    private static void op(int opcode, AddressingMode mode, Operation operation) {
+        OPCODES[opcode] = new Opcode(mode, operation);
+    }
+
+    static {
+        // Unofficial opcodes are ignored for now, as in the switch.
+        Opcode unofficial = new Opcode(CPU::implied, cpu -> { });
+        Arrays.fill(OPCODES, unofficial);
+
+        // ADC
+        op(0x69, CPU::immediate, CPU::ADC); op(0x65, CPU::zp, CPU::ADC);
+        op(0x75, CPU::zpX, CPU::ADC); op(0x6D, CPU::abs, CPU::ADC);
+        op(0x7D, cpu -> cpu.absX(true), CPU::ADC); op(0x79, cpu -> cpu.absY(true), CPU::ADC);
+        op(0x61, CPU::indX, CPU::ADC); op(0x71, cpu -> cpu.indY(true), CPU::ADC);
+        // AND
+        op(0x29, CPU::immediate, CPU::AND); op(0x25, CPU::zp, CPU::AND);
+        op(0x35, CPU::zpX, CPU::AND); op(0x2D, CPU::abs, CPU::AND);
+        op(0x3D, cpu -> cpu.absX(true), CPU::AND); op(0x39, cpu -> cpu.absY(true), CPU::AND);
+        op(0x21, CPU::indX, CPU::AND); op(0x31, cpu -> cpu.indY(true), CPU::AND);
+        // ASL
+        op(0x0A, CPU::accumulator, CPU::ASL);
+        op(0x06, CPU::zp, CPU::ASL);
+        op(0x16, CPU::zpX, CPU::ASL); op(0x0E, CPU::abs, CPU::ASL);
+        op(0x1E, cpu -> cpu.absX(false), CPU::ASL);
+        // Branches
+        op(0x90, CPU::implied, cpu -> cpu.branch(!cpu.flag(C))); op(0xB0, CPU::implied, cpu -> cpu.branch(cpu.flag(C)));
+        op(0xF0, CPU::implied, cpu -> cpu.branch(cpu.flag(Z))); op(0x30, CPU::implied, cpu -> cpu.branch(cpu.flag(N)));
+        op(0xD0, CPU::implied, cpu -> cpu.branch(!cpu.flag(Z))); op(0x10, CPU::implied, cpu -> cpu.branch(!cpu.flag(N)));
+        op(0x50, CPU::implied, cpu -> cpu.branch(!cpu.flag(V))); op(0x70, CPU::implied, cpu -> cpu.branch(cpu.flag(V)));
+        // BIT
+        op(0x24, CPU::zp, CPU::BIT); op(0x2C, CPU::abs, CPU::BIT);
+        // BRK
+        op(0x00, CPU::implied, CPU::BRK);
+        // Flags
+        op(0x18, CPU::implied, CPU::CLC); op(0xD8, CPU::implied, CPU::CLD);
+        op(0x58, CPU::implied, CPU::CLI); op(0xB8, CPU::implied, CPU::CLV);
+        op(0x38, CPU::implied, CPU::SEC); op(0xF8, CPU::implied, CPU::SED);
+        op(0x78, CPU::implied, CPU::SEI);
+        // CMP
+        op(0xC9, CPU::immediate, CPU::CMP); op(0xC5, CPU::zp, CPU::CMP);
+        op(0xD5, CPU::zpX, CPU::CMP); op(0xCD, CPU::abs, CPU::CMP);
+        op(0xDD, cpu -> cpu.absX(true), CPU::CMP); op(0xD9, cpu -> cpu.absY(true), CPU::CMP);
+        op(0xC1, CPU::indX, CPU::CMP); op(0xD1, cpu -> cpu.indY(true), CPU::CMP);
+        // CPX
+        op(0xE0, CPU::immediate, CPU::CPX); op(0xE4, CPU::zp, CPU::CPX);
+        op(0xEC, CPU::abs, CPU::CPX);
+        // CPY
+        op(0xC0, CPU::immediate, CPU::CPY); op(0xC4, CPU::zp, CPU::CPY);
+        op(0xCC, CPU::abs, CPU::CPY);
+        // DEC
+        op(0xC6, CPU::zp, CPU::DEC); op(0xD6, CPU::zpX, CPU::DEC);
+        op(0xCE, CPU::abs, CPU::DEC); op(0xDE, cpu -> cpu.absX(false), CPU::DEC);
+        // EOR
+        op(0x49, CPU::immediate, CPU::EOR); op(0x45, CPU::zp, CPU::EOR);
+        op(0x55, CPU::zpX, CPU::EOR); op(0x4D, CPU::abs, CPU::EOR);
+        op(0x5D, cpu -> cpu.absX(true), CPU::EOR); op(0x59, cpu -> cpu.absY(true), CPU::EOR);
+        op(0x41, CPU::indX, CPU::EOR); op(0x51, cpu -> cpu.indY(true), CPU::EOR);
+        // INC
+        op(0xE6, CPU::zp, CPU::INC); op(0xF6, CPU::zpX, CPU::INC);
+        op(0xEE, CPU::abs, CPU::INC); op(0xFE, cpu -> cpu.absX(false), CPU::INC);
+        // Jumps
+        op(0x4C, CPU::implied, CPU::JMP_abs); op(0x6C, CPU::implied, CPU::JMP_ind);
+        op(0x20, CPU::implied, CPU::JSR); op(0x60, CPU::implied, CPU::RTS);
+        op(0x40, CPU::implied, CPU::RTI);
+        // LDA
+        op(0xA9, CPU::immediate, CPU::LDA); op(0xA5, CPU::zp, CPU::LDA);
+        op(0xB5, CPU::zpX, CPU::LDA); op(0xAD, CPU::abs, CPU::LDA);
+        op(0xBD, cpu -> cpu.absX(true), CPU::LDA); op(0xB9, cpu -> cpu.absY(true), CPU::LDA);
+        op(0xA1, CPU::indX, CPU::LDA); op(0xB1, cpu -> cpu.indY(true), CPU::LDA);
+        // LDX
+        op(0xA2, CPU::immediate, CPU::LDX); op(0xA6, CPU::zp, CPU::LDX);
+        op(0xB6, CPU::zpY, CPU::LDX); op(0xAE, CPU::abs, CPU::LDX);
+        op(0xBE, cpu -> cpu.absY(true), CPU::LDX);
+        // LDY
+        op(0xA0, CPU::immediate, CPU::LDY); op(0xA4, CPU::zp, CPU::LDY);
+        op(0xB4, CPU::zpX, CPU::LDY); op(0xAC, CPU::abs, CPU::LDY);
+        op(0xBC, cpu -> cpu.absX(true), CPU::LDY);
+        // LSR
+        op(0x4A, CPU::accumulator, CPU::LSR);
+        op(0x46, CPU::zp, CPU::LSR);
+        op(0x56, CPU::zpX, CPU::LSR); op(0x4E, CPU::abs, CPU::LSR);
+        op(0x5E, cpu -> cpu.absX(false), CPU::LSR);
+        // NOP
+        op(0xEA, CPU::implied, CPU::NOP);
+        // ORA
+        op(0x09, CPU::immediate, CPU::ORA); op(0x05, CPU::zp, CPU::ORA);
+        op(0x15, CPU::zpX, CPU::ORA); op(0x0D, CPU::abs, CPU::ORA);
+        op(0x1D, cpu -> cpu.absX(true), CPU::ORA); op(0x19, cpu -> cpu.absY(true), CPU::ORA);
+        op(0x01, CPU::indX, CPU::ORA); op(0x11, cpu -> cpu.indY(true), CPU::ORA);
+        // Stack
+        op(0x48, CPU::implied, CPU::PHA); op(0x68, CPU::implied, CPU::PLA);
+        op(0x08, CPU::implied, CPU::PHP); op(0x28, CPU::implied, CPU::PLP);
+        // ROL
+        op(0x2A, CPU::accumulator, CPU::ROL);
+        op(0x26, CPU::zp, CPU::ROL);
+        op(0x36, CPU::zpX, CPU::ROL); op(0x2E, CPU::abs, CPU::ROL);
+        op(0x3E, cpu -> cpu.absX(false), CPU::ROL);
+        // ROR
+        op(0x6A, CPU::accumulator, CPU::ROR);
+        op(0x66, CPU::zp, CPU::ROR);
+        op(0x76, CPU::zpX, CPU::ROR); op(0x6E, CPU::abs, CPU::ROR);
+        op(0x7E, cpu -> cpu.absX(false), CPU::ROR);
+        // SBC
+        op(0xE9, CPU::immediate, CPU::SBC); op(0xEB, CPU::immediate, CPU::SBC);
+        op(0xE5, CPU::zp, CPU::SBC);
+        op(0xF5, CPU::zpX, CPU::SBC); op(0xED, CPU::abs, CPU::SBC);
+        op(0xFD, cpu -> cpu.absX(true), CPU::SBC); op(0xF9, cpu -> cpu.absY(true), CPU::SBC);
+        op(0xE1, CPU::indX, CPU::SBC); op(0xF1, cpu -> cpu.indY(true), CPU::SBC);
+        // STA
+        op(0x85, CPU::zpAddr, CPU::STA); op(0x95, CPU::zpXAddr, CPU::STA);
+        op(0x8D, CPU::absAddr, CPU::STA); op(0x9D, cpu -> cpu.absXAddr(true), CPU::STA);
+        op(0x99, cpu -> cpu.absYAddr(true), CPU::STA); op(0x81, CPU::indXAddr, CPU::STA);
+        op(0x91, cpu -> cpu.indYAddr(true), CPU::STA);
+        // STX
+        op(0x86, CPU::zpAddr, CPU::STX); op(0x96, CPU::zpYAddr, CPU::STX);
+        op(0x8E, CPU::absAddr, CPU::STX);
+        // STY
+        op(0x84, CPU::zpAddr, CPU::STY); op(0x94, CPU::zpXAddr, CPU::STY);
+        op(0x8C, CPU::absAddr, CPU::STY);
+        // Transfers
+        op(0xAA, CPU::implied, CPU::TAX); op(0xA8, CPU::implied, CPU::TAY);
+        op(0x8A, CPU::implied, CPU::TXA); op(0x98, CPU::implied, CPU::TYA);
+        op(0xBA, CPU::implied, CPU::TSX); op(0x9A, CPU::implied, CPU::TXS);
+        // Increments/Decrements
+        op(0xE8, CPU::implied, CPU::INX); op(0xC8, CPU::implied, CPU::INY);
+        op(0xCA, CPU::implied, CPU::DEX); op(0x88, CPU::implied, CPU::DEY);
+    }
 }
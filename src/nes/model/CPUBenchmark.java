@@ -0,0 +1,119 @@
+package nes.model;
+
+/**
+ * Micro-benchmark for the CPU core: runs the same PRG ROM loop with the table
+ * dispatcher and with the original switch and prints instructions per second,
+ * then compares the interpreter with the block recompiler in cycles per second.
+ * PPU and APU are left detached so the numbers reflect decode and execute only.
+ */
+public final class CPUBenchmark {
+    private CPUBenchmark() {}
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int INSTRUCTIONS_PER_ROUND = 10_000_000;
+    private static final int CYCLES_PER_ROUND = 30_000_000;
+
+    // Mixed workload at $8000: loads/stores across addressing modes, ALU ops,
+    // shifts, stack traffic, JSR/RTS and taken/not-taken branches.
+    private static final int[] PROGRAM = {
+            0xA2, 0x00,             // 8000 LDX #$00
+            0xA0, 0x10,             // 8002 LDY #$10
+            0x8A,                   // 8004 TXA          loop:
+            0x18,                   // 8005 CLC
+            0x69, 0x37,             // 8006 ADC #$37
+            0x95, 0x40,             // 8008 STA $40,X
+            0x5D, 0x00, 0x80,       // 800A EOR $8000,X
+            0x0A,                   // 800D ASL A
+            0x26, 0x80,             // 800E ROL $80
+            0x66, 0x81,             // 8010 ROR $81
+            0x48,                   // 8012 PHA
+            0x20, 0x30, 0x80,       // 8013 JSR $8030
+            0x68,                   // 8016 PLA
+            0x99, 0x00, 0x05,       // 8017 STA $0500,Y
+            0x51, 0x90,             // 801A EOR ($90),Y
+            0x38,                   // 801C SEC
+            0xE5, 0x40,             // 801D SBC $40
+            0xC9, 0x80,             // 801F CMP #$80
+            0x90, 0x02,             // 8021 BCC $8025
+            0x4A,                   // 8023 LSR A
+            0xEA,                   // 8024 NOP
+            0xE8,                   // 8025 INX
+            0x88,                   // 8026 DEY
+            0xD0, 0xDB,             // 8027 BNE $8004
+            0xE6, 0x82,             // 8029 INC $82
+            0x4C, 0x00, 0x80,       // 802B JMP $8000
+            0x00, 0x00,             // 802E (padding)
+            0x24, 0x40,             // 8030 BIT $40
+            0x08,                   // 8032 PHP
+            0x28,                   // 8033 PLP
+            0xCE, 0x83, 0x00,       // 8034 DEC $0083
+            0xAD, 0x83, 0x00,       // 8037 LDA $0083
+            0x60                    // 803A RTS
+    };
+
+    /** Run the benchmark and print one line per dispatch mode plus the speedup. */
+    public static void run() {
+        CPU cpu = new CPU();
+        Bus bus = new Bus(cpu, null, null, new RAM(2 * 1024));
+        bus.setCartridge(makeCartridge());
+        cpu.reset();
+
+        double[] best = new double[CPU.Dispatch.values().length];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (CPU.Dispatch d : CPU.Dispatch.values()) {
+                cpu.setDispatch(d);
+                long start = System.nanoTime();
+                for (int i = 0; i < INSTRUCTIONS_PER_ROUND; i++) {
+                    cpu.stepInstruction();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round >= WARMUP_ROUNDS) {
+                    best[d.ordinal()] = Math.max(best[d.ordinal()], INSTRUCTIONS_PER_ROUND / seconds);
+                }
+            }
+        }
+
+        for (CPU.Dispatch d : CPU.Dispatch.values()) {
+            System.out.printf("CPU dispatch %-6s: %8.2f M instructions/s%n", d, best[d.ordinal()] / 1e6);
+        }
+        System.out.printf("Table vs switch: %.2fx%n",
+                best[CPU.Dispatch.TABLE.ordinal()] / best[CPU.Dispatch.SWITCH.ordinal()]);
+
+        // Interpreter vs block recompiler, both through CPU.step() with the default switch dispatcher.
+        cpu.setDispatch(CPU.Dispatch.SWITCH);
+        double[] bestCycles = new double[CPU.Execution.values().length];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (CPU.Execution e : CPU.Execution.values()) {
+                cpu.setExecution(e);
+                long start = System.nanoTime();
+                cpu.step(CYCLES_PER_ROUND);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round >= WARMUP_ROUNDS) {
+                    bestCycles[e.ordinal()] = Math.max(bestCycles[e.ordinal()], CYCLES_PER_ROUND / seconds);
+                }
+            }
+        }
+        for (CPU.Execution e : CPU.Execution.values()) {
+            System.out.printf("CPU execution %-11s: %8.2f M cycles/s%n", e, bestCycles[e.ordinal()] / 1e6);
+        }
+        System.out.printf("Recompiler vs interpreter: %.2fx (%d blocks compiled)%n",
+                bestCycles[CPU.Execution.RECOMPILER.ordinal()] / bestCycles[CPU.Execution.INTERPRETER.ordinal()],
+                cpu.getCompiledBlocks());
+    }
+
+    /** NROM cartridge with {@link #PROGRAM} at $8000; also used by {@link CPUSelfTest}. */
+    static Cartridge makeCartridge() {
+        byte[] rom = new byte[16 + 16 * 1024 + 8 * 1024];
+        rom[0] = 'N'; rom[1] = 'E'; rom[2] = 'S'; rom[3] = 0x1A;
+        rom[4] = 1; // 1x16KB PRG, mirrored at $C000
+        rom[5] = 1; // 1x8KB CHR
+        for (int i = 0; i < PROGRAM.length; i++) {
+            rom[16 + i] = (byte) PROGRAM[i];
+        }
+        // Reset vector at $FFFC -> $8000
+        rom[16 + 0x3FFC] = 0x00;
+        rom[16 + 0x3FFD] = (byte) 0x80;
+        return Cartridge.loadFromBytes(rom, "CPU_BENCH");
+    }
+}
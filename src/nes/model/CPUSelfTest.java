@@ -70,4 +70,232 @@ public final class CPUSelfTest {
         boolean ok = (v10 == 0x05) && (v11 == 0x08) && (v12 == 0x11);
         return ok;
     }
+
+    /**
+     * Run the same RAM program once with the dispatch table and once with the
+     * reference switch and require identical memory contents and cycle counts.
+     */
+    public static boolean runDispatchEquivalence() {
+        // Program at $0400 (the reset vector reads 0, so $0000 jumps there):
+        //   loop mixing ALU ops, shifts, stack traffic, JSR/RTS, indexed and
+        //   indirect addressing, and branches that both cross and stay in a page.
+        int[] program = new int[] {
+                0xA2, 0x00,             // 0400 LDX #$00
+                0xA0, 0x10,             // 0402 LDY #$10
+                0x8A,                   // 0404 TXA          loop:
+                0x18,                   // 0405 CLC
+                0x69, 0x37,             // 0406 ADC #$37
+                0x95, 0x40,             // 0408 STA $40,X
+                0x5D, 0x00, 0x04,       // 040A EOR $0400,X
+                0x0A,                   // 040D ASL A
+                0x26, 0x80,             // 040E ROL $80
+                0x66, 0x81,             // 0410 ROR $81
+                0x48,                   // 0412 PHA
+                0x20, 0x30, 0x04,       // 0413 JSR $0430
+                0x68,                   // 0416 PLA
+                0x99, 0x00, 0x05,       // 0417 STA $0500,Y
+                0x51, 0x90,             // 041A EOR ($90),Y
+                0x38,                   // 041C SEC
+                0xE5, 0x40,             // 041D SBC $40
+                0xC9, 0x80,             // 041F CMP #$80
+                0x90, 0x02,             // 0421 BCC $0425
+                0x4A,                   // 0423 LSR A
+                0xEA,                   // 0424 NOP
+                0xE8,                   // 0425 INX
+                0x88,                   // 0426 DEY
+                0xD0, 0xDB,             // 0427 BNE $0404
+                0xE6, 0x82,             // 0429 INC $82
+                0x4C, 0x00, 0x04,       // 042B JMP $0400
+                0x00, 0x00,             // 042E (padding)
+                0x24, 0x40,             // 0430 BIT $40
+                0x08,                   // 0432 PHP
+                0x28,                   // 0433 PLP
+                0xCE, 0x83, 0x00,       // 0434 DEC $0083
+                0xAD, 0x83, 0x00,       // 0437 LDA $0083
+                0x60                    // 043A RTS
+        };
+
+        RAM[] results = new RAM[2];
+        long[] cycles = new long[2];
+        CPU.Dispatch[] modes = { CPU.Dispatch.TABLE, CPU.Dispatch.SWITCH };
+        for (int m = 0; m < modes.length; m++) {
+            CPU cpu = new CPU();
+            RAM ram = new RAM(2 * 1024);
+            new Bus(cpu, new PPU(), new APU(), ram);
+            ram.write(0x0000, 0x4C); ram.write(0x0001, 0x00); ram.write(0x0002, 0x04);
+            for (int i = 0; i < program.length; i++) {
+                ram.write(0x0400 + i, program[i]);
+            }
+            cpu.setDispatch(modes[m]);
+            cpu.reset();
+            for (int i = 0; i < 5000; i++) {
+                cpu.stepInstruction();
+            }
+            results[m] = ram;
+            cycles[m] = cpu.getCycles();
+        }
+
+        if (cycles[0] != cycles[1]) return false;
+        for (int i = 0; i < 2 * 1024; i++) {
+            if (results[0].read(i) != results[1].read(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Self-modifying RAM code must behave the same with and without the predecode
+     * cache: stores into an instruction's operand have to invalidate its entry.
+     */
+    public static boolean runDecodeCacheInvalidation() {
+        int[] program = new int[] {
+                0xA9, 0x00,             // 0400 LDA #$00
+                0x18,                   // 0402 CLC
+                0x69, 0x03,             // 0403 ADC #$03
+                0x8D, 0x01, 0x04,       // 0405 STA $0401     patch the LDA operand
+                0x9D, 0x00, 0x05,       // 0408 STA $0500,X
+                0xE8,                   // 040B INX
+                0xD0, 0xF2,             // 040C BNE $0400
+                0xEE, 0x04, 0x04,       // 040E INC $0404     patch the ADC operand
+                0x4C, 0x00, 0x04        // 0411 JMP $0400
+        };
+
+        RAM[] results = new RAM[2];
+        long[] cycles = new long[2];
+        long hits = 0;
+        for (int m = 0; m < 2; m++) {
+            CPU cpu = new CPU();
+            RAM ram = new RAM(2 * 1024);
+            new Bus(cpu, new PPU(), new APU(), ram);
+            ram.write(0x0000, 0x4C); ram.write(0x0001, 0x00); ram.write(0x0002, 0x04);
+            for (int i = 0; i < program.length; i++) {
+                ram.write(0x0400 + i, program[i]);
+            }
+            cpu.setDecodeCache(m == 0);
+            cpu.reset();
+            for (int i = 0; i < 20000; i++) {
+                cpu.stepInstruction();
+            }
+            results[m] = ram;
+            cycles[m] = cpu.getCycles();
+            if (m == 0) hits = cpu.getDecodeHits();
+        }
+
+        if (hits == 0 || cycles[0] != cycles[1]) return false;
+        for (int i = 0; i < 2 * 1024; i++) {
+            if (results[0].read(i) != results[1].read(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Run the benchmark ROM for a number of frames with the interpreter and with
+     * the block recompiler and require identical RAM, cycle counts and frames.
+     */
+    public static boolean runRecompilerEquivalence() {
+        CPU.Execution[] modes = CPU.Execution.values();
+        RAM[] results = new RAM[modes.length];
+        long[] cycles = new long[modes.length];
+        int[][] frames = new int[modes.length][];
+        long compiled = 0;
+        for (int m = 0; m < modes.length; m++) {
+            CPU cpu = new CPU();
+            PPU ppu = new PPU();
+            RAM ram = new RAM(2 * 1024);
+            Bus bus = new Bus(cpu, ppu, new APU(), ram);
+            Cartridge cart = CPUBenchmark.makeCartridge();
+            bus.setCartridge(cart);
+            ppu.setCartridge(cart);
+            cpu.setExecution(modes[m]);
+            cpu.reset();
+            for (int f = 0; f < 20; f++) {
+                cpu.step(NESConsole.NTSC_CPU_CYCLES_PER_FRAME);
+            }
+            bus.syncPpu();
+            results[m] = ram;
+            cycles[m] = cpu.getCycles();
+            frames[m] = ppu.getFrameBuffer().clone();
+            if (modes[m] == CPU.Execution.RECOMPILER) compiled = cpu.getCompiledBlocks();
+        }
+
+        if (compiled == 0) return false;
+        for (int m = 1; m < modes.length; m++) {
+            if (cycles[m] != cycles[0]) return false;
+            if (!java.util.Arrays.equals(frames[m], frames[0])) return false;
+            for (int i = 0; i < 2 * 1024; i++) {
+                if (results[m].read(i) != results[0].read(i)) return false;
+            }
+        }
+        return true;
+    }
+
+    // NROM program that waits in each idle-loop form with NMI and the APU frame IRQ live:
+    // $8000 reset: SEI, enable NMI and rendering, CLI
+    // $800C main:  LDA $10 / BEQ main          ; poll a RAM flag set by NMI
+    //              LDA #0 / STA $10 / INC $11
+    // $8016 wait:  BIT $2002 / BPL wait        ; wait for vblank
+    //              LDA $11 / AND #3 / BNE main
+    // $8021        JMP $8021                   ; park, interrupts only
+    // $8024 NMI:   INC $10 / BIT $2002 / RTI
+    // $802A IRQ:   INC $12 / LDA $4015 / RTI
+    private static final int[] IDLE_PROGRAM = {
+        0x78, 0xA9, 0x80, 0x8D, 0x00, 0x20, 0xA9, 0x1E, 0x8D, 0x01, 0x20, 0x58,
+        0xA5, 0x10, 0xF0, 0xFC,
+        0xA9, 0x00, 0x85, 0x10, 0xE6, 0x11,
+        0x2C, 0x02, 0x20, 0x10, 0xFB,
+        0xA5, 0x11, 0x29, 0x03, 0xD0, 0xEB,
+        0x4C, 0x21, 0x80,
+        0xE6, 0x10, 0x2C, 0x02, 0x20, 0x40,
+        0xE6, 0x12, 0xAD, 0x15, 0x40, 0x40
+    };
+
+    /**
+     * Run the idle-loop program with fast-forward on and off and require identical
+     * RAM, cycle counts and frames, with cycles actually skipped when it is on.
+     */
+    public static boolean runIdleSkipEquivalence() {
+        byte[] rom = new byte[16 + 16 * 1024 + 8 * 1024];
+        rom[0] = 'N'; rom[1] = 'E'; rom[2] = 'S'; rom[3] = 0x1A;
+        rom[4] = 1; rom[5] = 1;
+        for (int i = 0; i < IDLE_PROGRAM.length; i++) rom[16 + i] = (byte) IDLE_PROGRAM[i];
+        int[] vectors = {0x24, 0x80, 0x00, 0x80, 0x2A, 0x80}; // NMI, RESET, IRQ
+        for (int i = 0; i < vectors.length; i++) rom[16 + 0x3FFA + i] = (byte) vectors[i];
+
+        RAM[] results = new RAM[2];
+        long[] cycles = new long[2];
+        int[][] frames = new int[2][];
+        long skipped = 0;
+        for (int m = 0; m < 2; m++) {
+            CPU cpu = new CPU();
+            PPU ppu = new PPU();
+            RAM ram = new RAM(2 * 1024);
+            Bus bus = new Bus(cpu, ppu, new APU(), ram);
+            Cartridge cart = Cartridge.loadFromBytes(rom, "IDLE_TEST");
+            bus.setCartridge(cart);
+            ppu.setCartridge(cart);
+            cpu.setIdleLoopSkip(m == 1);
+            cpu.reset();
+            for (int f = 0; f < 30; f++) {
+                cpu.step(NESConsole.NTSC_CPU_CYCLES_PER_FRAME);
+            }
+            bus.syncPpu();
+            results[m] = ram;
+            cycles[m] = cpu.getCycles();
+            frames[m] = ppu.getFrameBuffer().clone();
+            if (m == 1) skipped = cpu.getIdleCyclesSkipped();
+        }
+
+        if (skipped == 0 || results[0].read(0x12) == 0) return false;
+        if (cycles[1] != cycles[0]) return false;
+        if (!java.util.Arrays.equals(frames[1], frames[0])) return false;
+        for (int i = 0; i < 2 * 1024; i++) {
+            if (results[1].read(i) != results[0].read(i)) return false;
+        }
+        return true;
+    }
+
+    /** Run all available CPU self-tests. */
+    public static boolean runAll() {
+        return runTiny() && runDispatchEquivalence() && runDecodeCacheInvalidation()
+                && runRecompilerEquivalence() && runIdleSkipEquivalence();
+    }
 }
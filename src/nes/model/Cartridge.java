@@ -8,10 +8,8 @@ import nes.model.mapper.Mapper3;
 import nes.model.mapper.Mapper4;
 import nes.model.mapper.Mapper5;
 import nes.model.mapper.Mapper7;
-import nes.util.IOUtil;
 
 import java.io.IOException;
-import java.util.Arrays;
 
 /**
  * Represents an NES cartridge, containing PRG and CHR data, and an assigned memory mapper.
@@ -26,16 +24,28 @@ public class Cartridge {
     private final Mirroring staticMirroring;
     private final String title;
 
+    private final RomStore.Image image; // keeps a shared image in the store while this cartridge lives
     private final Mapper mapper;
+    private ChrCache chrCache;
 
-    private Cartridge(byte[] prgRom, byte[] chr, boolean chrIsRam, int mapperId,
-                      Mirroring staticMirroring, String title) {
-        this.prgRom = prgRom;
-        this.chr = chr;
-        this.chrIsRam = chrIsRam;
-        this.mapperId = mapperId;
-        this.staticMirroring = staticMirroring;
-        this.title = title;
+    /**
+     * A cartridge over {@code image}: PRG ROM and CHR ROM are the image's own
+     * arrays, CHR RAM is allocated here. AxROM boards may store into CHR ROM,
+     * so they get a private copy of it.
+     */
+    Cartridge(RomStore.Image image, String title) {
+        this.image = image;
+        this.prgRom = image.prgRom;
+        this.chrIsRam = image.chrRom == null;
+        if (chrIsRam) {
+            this.chr = new byte[image.chrSize]; // Allocate CHR RAM
+        } else {
+            this.chr = (image.mapperId == 7) ? image.chrRom.clone() : image.chrRom;
+        }
+        this.mapperId = image.mapperId;
+        this.staticMirroring = image.mirroring;
+        this.title = title != null ? title : "iNES ROM";
+        this.chrCache = chrIsRam ? ChrCache.forRam(chr) : image.chrCache();
 
         // Instantiate the correct mapper
         switch (this.mapperId) {
@@ -66,11 +76,40 @@ public class Cartridge {
         this.mapper.setCartridge(this);
     }
 
+    /** Whether the constructor's mapper switch has an implementation for iNES mapper {@code mapperId}. */
+    public static boolean isMapperSupported(int mapperId) {
+        switch (mapperId) {
+            case 0:
+            case 1:
+            case 2:
+            case 3:
+            case 4:
+            case 5:
+            case 7:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public String getName() { return title; }
     public int getMapperId() { return mapperId; }
     public byte[] getChr() { return chr; }
     public byte[] getPrgRom() { return prgRom; }
     public boolean isChrRam() { return chrIsRam; }
+    public ChrCache getChrCache() { return chrCache; }
+
+    /**
+     * Mappers call this after storing a byte into CHR memory at {@code offset} so
+     * the decoded rows stay current. A write into CHR ROM (Mapper 7 allows it)
+     * first gives this cartridge a private cache, leaving the shared one intact.
+     */
+    public void chrWritten(int offset) {
+        if (chrCache.isShared()) {
+            chrCache = ChrCache.forRam(chr);
+        }
+        chrCache.invalidate(offset);
+    }
     public Mapper getMapper() { return mapper; }
 
     /**
@@ -110,46 +149,16 @@ public class Cartridge {
     }
 
     // ===== Loading iNES (.nes) =====
+
+    /** Load through {@link RomStore#shared}: cartridges from identical files share their ROM arrays. */
     public static Cartridge loadFromFile(String path) throws IOException {
-        byte[] bytes = IOUtil.readAllBytes(path);
-        return loadFromBytes(bytes, path);
+        return RomStore.shared().load(path);
     }
 
+    /** Load an in-memory iNES image through {@link RomStore#shared}, like {@link #loadFromFile}. */
     public static Cartridge loadFromBytes(byte[] data, String title) {
-        if (data == null || data.length < 16)
+        if (data == null)
             throw new IllegalArgumentException("Data too short for iNES header");
-        if (!(data[0] == 'N' && data[1] == 'E' && data[2] == 'S' && (data[3] & 0xFF) == 0x1A)) {
-            throw new IllegalArgumentException("Not an iNES file (invalid magic)");
-        }
-        int prgBanks = data[4] & 0xFF;
-        int chrBanks = data[5] & 0xFF;
-        int flags6 = data[6] & 0xFF;
-        int flags7 = data[7] & 0xFF;
-        boolean hasTrainer = (flags6 & 0x04) != 0;
-        boolean fourScreen = (flags6 & 0x08) != 0;
-        boolean vertical = (flags6 & 0x01) != 0;
-        int mapperId = ((flags7 & 0xF0) | ((flags6 >>> 4) & 0x0F)) & 0xFF;
-
-        int offset = 16;
-        if (hasTrainer) offset += 512;
-
-        int prgSize = prgBanks * 16 * 1024;
-        if (data.length < offset + prgSize) throw new IllegalArgumentException("File truncated (PRG)");
-        byte[] prgRom = Arrays.copyOfRange(data, offset, offset + prgSize);
-        offset += prgSize;
-
-        boolean chrIsRam = (chrBanks == 0);
-        int chrSize = chrIsRam ? 8 * 1024 : chrBanks * 8 * 1024;
-        byte[] chr;
-        if (chrIsRam) {
-            chr = new byte[chrSize]; // Allocate CHR RAM
-        } else {
-            if (data.length < offset + chrSize) throw new IllegalArgumentException("File truncated (CHR)");
-            chr = Arrays.copyOfRange(data, offset, offset + chrSize);
-        }
-
-        Mirroring mirroring = fourScreen ? Mirroring.FOUR_SCREEN : (vertical ? Mirroring.VERTICAL : Mirroring.HORIZONTAL);
-
-        return new Cartridge(prgRom, chr, chrIsRam, mapperId, mirroring, title != null ? title : "iNES ROM");
+        return RomStore.shared().load(data, title);
     }
 }
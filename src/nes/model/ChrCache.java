@@ -0,0 +1,95 @@
+package nes.model;
+
+/**
+ * Pattern data pre-decoded into 8-pixel rows, stored per 1KB CHR bank and
+ * decoded on first use. A row is one int: the low bitplane byte in bits 24-31,
+ * the high bitplane byte in bits 16-23 and the eight 2-bit pixels in bits 0-15,
+ * leftmost pixel in bits 14-15 (see {@link #pack}).
+ *
+ * A CHR ROM cache belongs to its {@link RomStore} image and is shared by every
+ * cartridge loaded from it, so several consoles running one game hold a single
+ * decoded copy; it is decoded up front and never reads the ROM array again.
+ * CHR RAM gets a private, lazily decoded cache that mappers keep current
+ * through {@link Cartridge#chrWritten}.
+ */
+public final class ChrCache {
+    private static final int ROWS_PER_BANK = 512; // 64 tiles x 8 rows
+    private static final int[] SPREAD = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int s = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((i & (1 << bit)) != 0) s |= 1 << (bit * 2);
+            }
+            SPREAD[i] = s;
+        }
+    }
+
+    private final byte[] chr;
+    private final int[][] banks;
+    private final boolean shared;
+
+    private ChrCache(byte[] chr, boolean shared) {
+        this.chr = shared ? null : chr;
+        this.banks = new int[(chr.length + 0x3FF) >> 10][];
+        this.shared = shared;
+    }
+
+    /** A fully decoded, read-only cache of a CHR ROM image; see {@link RomStore.Image#chrCache}. */
+    static ChrCache forRom(byte[] chr) {
+        ChrCache cache = new ChrCache(chr, true);
+        for (int bank = 0; bank < cache.banks.length; bank++) {
+            cache.decodeBank(bank, chr);
+        }
+        return cache;
+    }
+
+    /** A private cache over writable CHR memory. */
+    static ChrCache forRam(byte[] chr) {
+        return new ChrCache(chr, false);
+    }
+
+    boolean isShared() { return shared; }
+
+    /** The row whose low bitplane byte is at CHR offset {@code offset} (bit 3 clear). */
+    public int row(int offset) {
+        int[] rows = banks[offset >> 10];
+        if (rows == null) {
+            decodeBank(offset >> 10, chr);
+            rows = banks[offset >> 10];
+        }
+        return rows[((offset & 0x3F0) >> 1) | (offset & 7)];
+    }
+
+    /** Re-decode the row containing a CHR byte that has just been written. */
+    void invalidate(int offset) {
+        int[] rows = banks[offset >> 10];
+        if (rows != null) {
+            int lo = offset & ~8;
+            rows[((offset & 0x3F0) >> 1) | (offset & 7)] = pack(chr[lo] & 0xFF, chr[lo | 8] & 0xFF);
+        }
+    }
+
+    private void decodeBank(int bank, byte[] chr) {
+        int[] rows = new int[ROWS_PER_BANK];
+        int base = bank << 10;
+        for (int i = 0; i < ROWS_PER_BANK; i++) {
+            int lo = base + ((i >> 3) << 4) + (i & 7);
+            if (lo + 8 < chr.length) {
+                rows[i] = pack(chr[lo] & 0xFF, chr[lo + 8] & 0xFF);
+            }
+        }
+        banks[bank] = rows;
+    }
+
+    /** Pack two bitplane bytes into a row. */
+    public static int pack(int lo, int hi) {
+        return (lo << 24) | (hi << 16) | SPREAD[lo] | (SPREAD[hi] << 1);
+    }
+
+    /** Pixel {@code x} (0 = leftmost) of a packed row. */
+    public static int pixel(int row, int x) {
+        return (row >>> (14 - 2 * x)) & 3;
+    }
+}
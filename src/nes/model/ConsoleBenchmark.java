@@ -0,0 +1,48 @@
+package nes.model;
+
+import java.io.IOException;
+
+/**
+ * Headless whole-console benchmark: runs a ROM (or the {@link PPUBenchmark}
+ * sprite scene) with every frame drawn, with frame skip and with video off,
+ * and prints frames per second and the speedup over drawing every frame.
+ * The RAM contents at the end of each run must match, since skipping frames
+ * may not change anything the CPU can observe; a mismatch is reported.
+ */
+public final class ConsoleBenchmark {
+    private ConsoleBenchmark() {}
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+    private static final int FRAMES_PER_ROUND = 600;
+    private static final int FRAME_SKIP = 3;
+
+    /** Run the benchmark on the ROM at {@code romPath}, or the built-in scene if null. */
+    public static void run(String romPath) throws IOException {
+        String[] names = {"video", "frameskip " + FRAME_SKIP, "no video"};
+        double[] best = new double[names.length];
+        int[] ramHash = new int[names.length];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (int mode = 0; mode < names.length; mode++) {
+                NESConsole console = new NESConsole();
+                console.insertCartridge(romPath != null
+                        ? Cartridge.loadFromFile(romPath) : PPUBenchmark.makeCartridge());
+                console.setFrameSkip(mode == 1 ? FRAME_SKIP : 0);
+                console.setVideoEnabled(mode != 2);
+                long start = System.nanoTime();
+                for (int f = 0; f < FRAMES_PER_ROUND; f++) {
+                    console.nextFrame();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round >= WARMUP_ROUNDS) {
+                    best[mode] = Math.max(best[mode], FRAMES_PER_ROUND / seconds);
+                }
+                ramHash[mode] = console.getRamHash();
+            }
+        }
+        for (int mode = 0; mode < names.length; mode++) {
+            System.out.printf("Console %-11s: %8.1f frames/s (%.2fx)%s%n", names[mode], best[mode],
+                    best[mode] / best[0], ramHash[mode] == ramHash[0] ? "" : "  RAM MISMATCH");
+        }
+    }
+}
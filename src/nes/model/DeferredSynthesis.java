@@ -0,0 +1,128 @@
+package nes.model;
+
+import nes.util.FloatRingBuffer;
+import nes.util.LongRingBuffer;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * APU sound synthesis on its own thread. The emulation-side {@link APU} logs
+ * every register write, stamped with the CPU cycle it happened on, and closes
+ * one batch per frame; this thread replays the log on its own APU, which
+ * renders exactly the samples the emulation-side one would have. Samples are
+ * read from that APU's ring as usual.
+ *
+ * Each log entry is one long: the cycle within the batch in the high bits,
+ * then the register ($4000-$4017 as 0x00-0x17, or a marker) and the value.
+ */
+final class DeferredSynthesis implements Runnable {
+    private static final int END_BATCH = 0xFF; // cycle field holds the batch length
+    private static final int RESET = 0xFE;
+
+    private final APU apu;
+    private final LongRingBuffer log = new LongRingBuffer(1 << 14);
+    private final Thread thread = new Thread(this, "APU synthesis");
+    private volatile boolean running = true;
+
+    // Emulation thread
+    private int batchCycles;   // cycles since the current batch began
+    private long entriesLogged;
+
+    // Synthesis thread
+    private final long[] entries = new long[1024];
+    private int replayedCycles; // cycles of the current batch already synthesized
+    private volatile long entriesReplayed;
+
+    /** @param apu the APU to synthesize on, in the state the log starts from */
+    DeferredSynthesis(APU apu) {
+        this.apu = apu;
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void elapse(int cpuCycles) {
+        batchCycles += cpuCycles;
+    }
+
+    void logWrite(int address, int value) {
+        append(((long) batchCycles << 16) | ((address - 0x4000) << 8) | value);
+    }
+
+    void logReset() {
+        append(((long) batchCycles << 16) | (RESET << 8));
+    }
+
+    /** Close the batch and wake the synthesis thread; called once per frame. */
+    void endBatch() {
+        append(((long) batchCycles << 16) | (END_BATCH << 8));
+        batchCycles = 0;
+        LockSupport.unpark(thread);
+    }
+
+    private void append(long entry) {
+        while (!log.offer(entry)) {
+            // The synthesis thread is a whole log behind; let it catch up.
+            LockSupport.unpark(thread);
+            Thread.yield();
+        }
+        entriesLogged++;
+    }
+
+    /** Wait until everything logged so far has been synthesized. */
+    void sync() {
+        LockSupport.unpark(thread);
+        while (entriesReplayed < entriesLogged) {
+            Thread.yield();
+        }
+    }
+
+    /** Finish the log and stop the thread. */
+    void stop() {
+        sync();
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void setSampleRate(int rate) {
+        apu.setSampleRate(rate);
+    }
+
+    void setRateAdjust(double adjust) {
+        apu.setRateAdjust(adjust);
+    }
+
+    FloatRingBuffer getSampleBuffer() {
+        return apu.getSampleBuffer();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            int count = log.drain(entries);
+            if (count == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                long entry = entries[i];
+                int cycle = (int) (entry >>> 16);
+                int register = (int) (entry >>> 8) & 0xFF;
+                apu.stepCpuCycles(cycle - replayedCycles);
+                replayedCycles = cycle;
+                if (register == END_BATCH) {
+                    replayedCycles = 0;
+                } else if (register == RESET) {
+                    apu.reset();
+                } else {
+                    apu.writeRegister(0x4000 + register, (int) entry & 0xFF);
+                }
+            }
+            entriesReplayed += count; // only this thread writes it
+        }
+    }
+}
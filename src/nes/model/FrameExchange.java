@@ -0,0 +1,63 @@
+package nes.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer for handing finished frames from the emulation thread
+ * to a single reader (normally the Swing EDT). The writer owns the back buffer
+ * and the reader the front one; the third, "middle" buffer is exchanged
+ * atomically between them. Publishing overwrites an unread middle frame, so a
+ * reader that falls behind simply skips to the newest frame, and neither side
+ * ever waits, copies or sees a half-drawn frame.
+ */
+public final class FrameExchange {
+    private static final int FRESH = 4; // set on the middle index while it holds an unread frame
+
+    private final short[][] buffers;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // writer only
+    private int front = 2; // reader only
+    private int newest = 2; // writer only: last published buffer, blank until the first publish
+
+    public FrameExchange(int pixels) {
+        buffers = new short[][] {new short[pixels], new short[pixels], new short[pixels]};
+    }
+
+    /** The buffer the writer draws into. */
+    short[] backBuffer() {
+        return buffers[back];
+    }
+
+    /** Writer: make the back buffer the newest frame and return the next one to draw into. */
+    short[] publish() {
+        newest = back;
+        back = middle.getAndSet(back | FRESH) & 3;
+        return buffers[back];
+    }
+
+    /**
+     * Writer thread: the newest published frame, left with the reader if it has
+     * not taken it yet. The writer does not draw into it before the next
+     * publish(), so it stays whole between frames on the emulation thread.
+     */
+    short[] newest() {
+        return buffers[newest];
+    }
+
+    /** Writer: clear every buffer (e.g. on reset). Only safe while no reader is active. */
+    void clear() {
+        for (short[] buffer : buffers) {
+            Arrays.fill(buffer, (short) 0);
+        }
+    }
+
+    /** Reader: the newest frame published since the last call, or null if there is none. */
+    public short[] poll() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & 3;
+        return buffers[front];
+    }
+}
@@ -14,6 +14,7 @@ public class NESConsole {
     public static final int NTSC_CPU_CYCLES_PER_FRAME = 29_780;
 
     private long frameCounter = 0;
+    private int idleCyclesLastFrame = 0;
     private int cpuCyclesPerFrame = NTSC_CPU_CYCLES_PER_FRAME;
 
     private final CPU cpu;
@@ -48,11 +49,12 @@ public class NESConsole {
     public void nextFrame() {
         frameCounter++;
         if (cpuCyclesPerFrame > 0 && cartridge != null) {
-            int cyclesRemaining = cpuCyclesPerFrame;
-            while (cyclesRemaining > 0) {
-                int cycles = cpu.stepInstruction();
-                cyclesRemaining -= cycles;
-            }
+            long idleBefore = cpu.getIdleCyclesSkipped();
+            cpu.step(cpuCyclesPerFrame);
+            idleCyclesLastFrame = (int) (cpu.getIdleCyclesSkipped() - idleBefore);
+            // Bring the PPU up to the end of the frame before the view reads it.
+            bus.syncPpu();
+            apu.endFrame();
         }
     }
 
@@ -66,10 +68,71 @@ public class NESConsole {
         return ppu.getFrameBuffer();
     }
 
+    /** Hash of work RAM, for checking that two runs reached the same CPU-visible state. */
+    int getRamHash() {
+        int hash = 1;
+        for (int i = 0; i < ram.size(); i++) {
+            hash = 31 * hash + ram.read(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Draw only one frame in every {@code skip + 1} (0 draws all). Skipped frames
+     * still run sprite evaluation, sprite 0 hit and every mapper-visible fetch.
+     */
+    public void setFrameSkip(int skip) {
+        ppu.setFrameSkip(skip);
+    }
+
+    /** Turn frame drawing off entirely, e.g. for headless runs; emulation is unchanged. */
+    public void setVideoEnabled(boolean enabled) {
+        ppu.setVideoEnabled(enabled);
+    }
+
+    /** The frame as indexed pixels, without RGB conversion; see {@link PPU#toRgb}. */
+    public short[] getIndexedFrameBuffer() {
+        return ppu.getIndexedFrameBuffer();
+    }
+
+    /**
+     * Completed frames, published by the PPU at vblank. A view on another thread
+     * polls this instead of calling getFrameBuffer() so it never sees a frame in
+     * the middle of being drawn.
+     */
+    public FrameExchange getFrameExchange() {
+        return ppu.getFrameExchange();
+    }
+
     public int drainApuSamples(float[] buffer) {
         return apu.drainSamples(buffer);
     }
 
+    /**
+     * Render sound on a thread of its own instead of the emulation thread.
+     * Samples are identical; set it before the first frame.
+     */
+    public void setDeferredAudio(boolean enabled) {
+        apu.setDeferredSynthesis(enabled);
+    }
+
+    /** Output sample rate, clamped to {@link APU#MIN_SAMPLE_RATE}-{@link APU#MAX_SAMPLE_RATE}. */
+    public void setAudioSampleRate(int rate) {
+        apu.setSampleRate(rate);
+    }
+
+    public int getAudioSampleRate() { return apu.getSampleRate(); }
+
+    /** Produce {@code adjust} times the nominal sample rate, e.g. from {@code AudioOutput.getRateAdjust()}. */
+    public void setAudioRateAdjust(double adjust) {
+        apu.setRateAdjust(adjust);
+    }
+
+    /** Samples dropped because the APU sample ring was full. */
+    public long getAudioOverflows() { return apu.getSampleBuffer().getOverflows(); }
+    /** Drains that found no samples waiting. */
+    public long getAudioUnderruns() { return apu.getSampleBuffer().getUnderruns(); }
+
     public int getScreenWidth() { return SCREEN_WIDTH; }
     public int getScreenHeight() { return SCREEN_HEIGHT; }
 
@@ -88,6 +151,7 @@ public class NESConsole {
     }
 
     public void insertCartridge(Cartridge cart) {
+        this.bus.syncPpu();  // settle cycles owed to the PPU under the old cartridge
         this.cartridge = cart;
         this.bus.setCartridge(cart);
         this.ppu.setCartridge(cart);
@@ -95,7 +159,41 @@ public class NESConsole {
             cart.reset();   // reset mapper (MMC1) state
         }
         this.ppu.reset();    // reset PPU state
+        this.bus.syncPpu();  // re-predict PPU events from the reset state
         this.cpu.reset();    // reset CPU
+        this.cpu.resetDecodeStats();
+        this.ppu.resetEngineStats();
+    }
+
+    /** Instructions served from / missing the CPU predecode cache since the last reset. */
+    public long getDecodeCacheHits() { return cpu.getDecodeHits(); }
+    public long getDecodeCacheMisses() { return cpu.getDecodeMisses(); }
+
+    /** Interpreter (default) or block recompiler for the CPU; results are identical. */
+    public void setCpuExecution(CPU.Execution execution) {
+        cpu.setExecution(execution);
+    }
+
+    /** Skip idle-loop iterations in bulk (default) or run every one; results are identical. */
+    public void setIdleLoopSkip(boolean enabled) {
+        cpu.setIdleLoopSkip(enabled);
+    }
+
+    /** CPU cycles of the last frame that were fast-forwarded through idle loops. */
+    public int getIdleCyclesLastFrame() { return idleCyclesLastFrame; }
+
+    /** Let the PPU draw undisturbed visible lines in one pass (default); frames are identical. */
+    public void setScanlineRenderer(boolean enabled) {
+        ppu.setScanlineRenderer(enabled);
+    }
+
+    /** Visible lines drawn by the PPU scanline engine / dot path since the cartridge was inserted. */
+    public long getScanlineEngineLines() { return ppu.getScanlineEngineLines(); }
+    public long getDotEngineLines() { return ppu.getDotEngineLines(); }
+
+    /** Lazy PPU catch-up (default) or per-cycle PPU stepping; frames are identical. */
+    public void setLazyPpuSync(boolean lazy) {
+        bus.setLazyPpuSync(lazy);
     }
 
     public void setCpuCyclesPerFrame(int cycles) {
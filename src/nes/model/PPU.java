@@ -1,6 +1,6 @@
 package nes.model;
 
-import nes.model.mapper.Mapper5;
+import nes.model.mapper.Mapper;
 
 import java.util.Arrays;
 
@@ -13,12 +13,44 @@ public class PPU {
     public static final int WIDTH = 256;
     public static final int HEIGHT = 240;
 
-    private final int[] frameBuffer = new int[WIDTH * HEIGHT];
+    // The frame being drawn, as indexed pixels: NES colour index in bits 0-5
+    // (greyscale already applied), PPUMASK emphasis bits 5-7 in bits 6-8. It is
+    // published to the exchange at vblank; RGB is produced on demand.
+    private final FrameExchange frames = new FrameExchange(WIDTH * HEIGHT);
+    private short[] frameBuffer = frames.backBuffer();
+
+    // Frame skipping: a skipped frame still makes every fetch, sprite evaluation
+    // and sprite-0 test (all the CPU can observe), but writes no pixels and is
+    // not published. Video off skips every frame.
+    private int frameSkip;
+    private boolean videoEnabled = true;
+    private int framesSkipped;
+    private boolean drawingFrame = true;
+    private final int[] rgbFrame = new int[WIDTH * HEIGHT];
 
     private final byte[] vram = new byte[0x800];
+    private final byte[] extraVram = new byte[0x800]; // cartridge RAM for four-screen boards
     private final byte[] palette = new byte[0x20];
     private final byte[] oam = new byte[256];
     private Cartridge cartridge;
+    private PpuBusListener listener; // the mapper, if it wants timing events
+
+    // Nametable page table: slot n serves $2000 + n*$400 (and its $3000 mirror) from
+    // ntRead[n] / ntWrite[n] at ntOffset[n]. A null write page drops writes.
+    private final byte[][] ntRead = new byte[4][];
+    private final byte[][] ntWrite = new byte[4][];
+    private final int[] ntOffset = new int[4];
+    private boolean mapperNametableReads;
+
+    // Pattern page table: slot n serves $0000 + n*$400 from patternPages[n] at
+    // patternOffsets[n], kept current by the mapper. Until a mapper maps it (or
+    // while it substitutes data per fetch) pattern reads go through Mapper.ppuRead.
+    private static final byte[] BLANK_PATTERN_PAGE = new byte[0x400];
+    private final byte[][] patternPages = new byte[8][];
+    private final int[] patternOffsets = new int[8];
+    private boolean mapperPatternReads;
+    private A12Listener a12Listener; // the mapper, if it counts A12 rising edges
+    private int lastA12;
 
     // Registers/state
     private boolean ctrlNmiEnable;
@@ -49,6 +81,29 @@ public class PPU {
     private int dot;
     private boolean oddFrame;
 
+    // Event prediction for the bus catch-up scheduler (positions count dots from
+    // the start of the pre-render line).
+    private static final int DOTS_PER_LINE = 341;
+    private static final int FRAME_DOTS = 262 * DOTS_PER_LINE;
+    private static final int VBLANK_POS = (241 + 1) * DOTS_PER_LINE + 1;
+    private static final int SPRITE_FETCH_DOT = 257;
+    // Register accesses that can move A12 off its per-line pattern (pattern table
+    // switches, $2007 CHR traffic, rendering toggles) make the whole of the next
+    // couple of rendered lines a potential MMC3 clock point.
+    private int a12HazardLines;
+
+    // Scanline engine: draws dots 1-256 of a visible line in one pass when a
+    // catch-up span covers the whole line, i.e. nothing the CPU does can land
+    // mid-line. Lines entered with a shorter span take the dot path.
+    private boolean scanlineRenderer = true;
+    private long scanlineEngineLines;
+    private long dotEngineLines;
+    private final short[] lineColors = new short[32];
+    // Background tiles of the line as packed ChrCache rows: pattern pixels and
+    // the matching attribute bits, two tiles from the shifters then 32 fetched.
+    private final int[] lineTiles = new int[34];
+    private final int[] lineAttribs = new int[34];
+
     // Background rendering shifters
     private int bg_next_tile_id;
     private int bg_next_tile_attrib;
@@ -70,20 +125,95 @@ public class PPU {
     private final int[] spriteAttrs = new int[8];
     private final boolean[] spriteIsZero = new boolean[8];
 
+    // The current line's sprite pixels, one entry per x: palette entry (palette * 4
+    // + pixel, 0 = transparent) plus SPRITE_FRONT / SPRITE_ZERO. Drawn from the
+    // fetched slots on the first sprite pixel after evaluation or a fetch changes them.
+    private static final int SPRITE_FRONT = 0x100;
+    private static final int SPRITE_ZERO = 0x200;
+    private final int[] spriteLine = new int[WIDTH];
+    private boolean spriteLineValid;
+
     private Bus bus;
 
     public PPU() {
+        Arrays.fill(patternPages, BLANK_PATTERN_PAGE);
+        updateMirroring();
         reset();
     }
 
     void attachBus(Bus bus) { this.bus = bus; }
     public void setCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
-        if (cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-            ((Mapper5) cartridge.getMapper()).setPpuVram(vram);
+        this.listener = (cartridge != null && cartridge.getMapper() instanceof PpuBusListener)
+                ? (PpuBusListener) cartridge.getMapper() : null;
+        this.a12Listener = (cartridge != null && cartridge.getMapper() instanceof A12Listener)
+                ? (A12Listener) cartridge.getMapper() : null;
+        mapperNametableReads = false;
+        Arrays.fill(patternPages, BLANK_PATTERN_PAGE);
+        Arrays.fill(patternOffsets, 0);
+        mapperPatternReads = cartridge != null;
+        lastA12 = 0;
+        updateMirroring();
+        if (cartridge != null) {
+            cartridge.getMapper().setPpu(this);
         }
     }
 
+    /** Re-map all four nametable slots from the cartridge's current mirroring. */
+    public void updateMirroring() {
+        Cartridge.Mirroring mode = (cartridge != null) ? cartridge.getMirroring() : Cartridge.Mirroring.VERTICAL;
+        switch (mode) {
+            case HORIZONTAL -> mapMirrored(0, 0, 0x400, 0x400);
+            case SINGLE_SCREEN_A -> mapMirrored(0, 0, 0, 0);
+            case SINGLE_SCREEN_B -> mapMirrored(0x400, 0x400, 0x400, 0x400);
+            case FOUR_SCREEN -> {
+                mapMirrored(0, 0x400, 0, 0x400);
+                mapNametable(2, extraVram, extraVram, 0);
+                mapNametable(3, extraVram, extraVram, 0x400);
+            }
+            default -> mapMirrored(0, 0x400, 0, 0x400); // VERTICAL
+        }
+    }
+
+    private void mapMirrored(int a, int b, int c, int d) {
+        mapNametable(0, vram, vram, a);
+        mapNametable(1, vram, vram, b);
+        mapNametable(2, vram, vram, c);
+        mapNametable(3, vram, vram, d);
+    }
+
+    /** Serve nametable slot {@code slot} from {@code read}/{@code write} at {@code offset}. */
+    public void mapNametable(int slot, byte[] read, byte[] write, int offset) {
+        ntRead[slot] = read;
+        ntWrite[slot] = write;
+        ntOffset[slot] = offset;
+    }
+
+    /**
+     * Serve pattern slot {@code slot} ($0000 + slot*$400) from {@code data} at
+     * {@code offset}. For data other than the cartridge's CHR, rows are still
+     * looked up in the cartridge's {@link ChrCache}, so mappers map CHR only.
+     */
+    public void mapPatternPage(int slot, byte[] data, int offset) {
+        patternPages[slot] = data;
+        patternOffsets[slot] = offset;
+    }
+
+    /**
+     * Route pattern reads through {@link Mapper#ppuRead} instead of the page
+     * table; on by default for each cartridge until its mapper turns it off.
+     */
+    public void setMapperPatternReads(boolean enabled) { mapperPatternReads = enabled; }
+
+    /** The console's 2KB of nametable RAM (CIRAM), for mappers that map it themselves. */
+    public byte[] getNametableRam() { return vram; }
+
+    /**
+     * Route nametable reads through {@link Mapper#ppuRead} instead of the page
+     * table, for mappers that substitute data per fetch (MMC5 ExRAM attributes).
+     */
+    public void setMapperNametableReads(boolean enabled) { mapperNametableReads = enabled; }
+
     public void reset() {
         // Clear all registers and state
         ctrlNmiEnable = false; ctrlSpriteSize8x16 = false; ctrlBgTableHigh = false;
@@ -92,6 +222,9 @@ public class PPU {
         statusSpriteOverflow = false; oamAddr = 0; writeToggleW = false;
         t = 0; v = 0; xFine = 0; ppuDataReadBuffer = 0; openBus = 0;
         scanline = -1; dot = 0; oddFrame = false;
+        framesSkipped = 0; drawingFrame = videoEnabled;
+        a12HazardLines = 0;
+        lastA12 = 0;
         bg_next_tile_id = 0;
         bg_next_tile_attrib = 0;
         bg_next_tile_lsb = 0;
@@ -103,9 +236,10 @@ public class PPU {
 
         // Clear memories
         Arrays.fill(vram, (byte) 0);
+        Arrays.fill(extraVram, (byte) 0);
         Arrays.fill(palette, (byte) 0);
         Arrays.fill(oam, (byte) 0);
-        Arrays.fill(frameBuffer, 0);
+        frames.clear();
         Arrays.fill(spriteScanline, -1);
         spriteCount = 0;
 
@@ -115,16 +249,184 @@ public class PPU {
         Arrays.fill(spriteXPos, 0);
         Arrays.fill(spriteAttrs, 0);
         Arrays.fill(spriteIsZero, false);
+        spriteLineValid = false;
     }
 
     public void stepCpuCycles(int cpuCycles) {
         if (cpuCycles <= 0) return;
         int ppuCycles = cpuCycles * 3;
-        while (ppuCycles-- > 0) {
+        while (ppuCycles > 0) {
+            if (dot == 1 && scanline >= 0 && scanline < 240) {
+                if (scanlineRenderer && ppuCycles >= 256) {
+                    renderScanline();
+                    ppuCycles -= 256;
+                    scanlineEngineLines++;
+                    continue;
+                }
+                dotEngineLines++;
+            }
             tickOneDot();
+            ppuCycles--;
+        }
+    }
+
+    /**
+     * Choose whether whole visible lines may be drawn by the scanline engine
+     * (default) or every dot goes through tickOneDot(). Frames are identical.
+     */
+    public void setScanlineRenderer(boolean enabled) { this.scanlineRenderer = enabled; }
+    public boolean isScanlineRenderer() { return scanlineRenderer; }
+    /** Visible lines drawn by the scanline engine / the dot path since the last reset of the counters. */
+    public long getScanlineEngineLines() { return scanlineEngineLines; }
+    public long getDotEngineLines() { return dotEngineLines; }
+    public void resetEngineStats() { scanlineEngineLines = 0; dotEngineLines = 0; }
+
+    /**
+     * CPU cycles until this PPU could next raise an NMI or a mapper IRQ: the
+     * vblank NMI at (241, 1) and, while a scanline IRQ is armed and rendering is
+     * on, dots 257-340 where MMC3 sees A12 rise and MMC5 counts the scanline.
+     * Rounded up; the event lands on PPU tick dots + 1 (tick dots when the
+     * odd-frame dot is skipped), so the bus still catches up early or exactly,
+     * never late.
+     */
+    int cpuCyclesUntilNextEvent() {
+        int pos = (scanline + 1) * DOTS_PER_LINE + dot;
+        int dots = dotsUntil(pos, VBLANK_POS);
+        if (isRenderEnabled() && cartridge != null && cartridge.getMapper().isScanlineIrqArmed()) {
+            if (scanline < 240) {
+                dots = (dot >= SPRITE_FETCH_DOT || a12HazardLines > 0) ? 0 : Math.min(dots, SPRITE_FETCH_DOT - dot);
+            } else {
+                dots = Math.min(dots, dotsUntil(pos, SPRITE_FETCH_DOT));
+            }
         }
+        // ceil(dots / 3) also absorbs the odd-frame skipped dot.
+        return (dots + 2) / 3;
     }
 
+    boolean isVBlankFlagSet() { return statusVBlank; }
+
+    private static int dotsUntil(int from, int to) {
+        return (to >= from) ? to - from : to + FRAME_DOTS - from;
+    }
+
+    /**
+     * Dots 1-256 of a visible line in one pass, leaving the PPU at dot 257 in the
+     * same state tickOneDot() would. The nametable, attribute and pattern fetches
+     * are made in the same order (mappers watching A12 or nametable fetches see
+     * no difference), but the per-dot dispatch is gone: pattern rows arrive
+     * pre-decoded through {@link Mapper#ppuReadRow} and each pixel is two bits
+     * picked out of its tile's row instead of a walk over the shifters.
+     */
+    private void renderScanline() {
+        int line = scanline * WIDTH;
+        dot = 257;
+        boolean draw = drawingFrame;
+        if (draw) {
+            for (int i = 0; i < 32; i++) {
+                lineColors[i] = pixelIndex(i);
+            }
+        }
+        if (!isRenderEnabled()) {
+            if (draw) {
+                Arrays.fill(frameBuffer, line, line + WIDTH, lineColors[0]);
+            }
+            return;
+        }
+        evaluateSprites();
+        PpuBusListener listener = this.listener;
+        if (listener != null) {
+            listener.scanlineStarted(scanline);
+        }
+
+        // The first two tiles of the line were prefetched into the shifters on the previous line.
+        loadBackgroundShifters();
+        lineTiles[0] = ChrCache.pack((int) (bg_shifter_pattern_lo >> 8) & 0xFF, (int) (bg_shifter_pattern_hi >> 8) & 0xFF);
+        lineTiles[1] = ChrCache.pack((int) bg_shifter_pattern_lo & 0xFF, (int) bg_shifter_pattern_hi & 0xFF);
+        lineAttribs[0] = ChrCache.pack((int) (bg_shifter_attrib_lo >> 8) & 0xFF, (int) (bg_shifter_attrib_hi >> 8) & 0xFF);
+        lineAttribs[1] = ChrCache.pack((int) bg_shifter_attrib_lo & 0xFF, (int) bg_shifter_attrib_hi & 0xFF);
+
+        int patternBase = ctrlBgTableHigh ? 0x1000 : 0;
+        for (int tile = 0; tile < 32; tile++) {
+            // Dot 8*tile+1: shift (from dot 2 on), reload, nametable fetch.
+            if (tile > 0) {
+                bg_shifter_pattern_lo <<= 1;
+                bg_shifter_pattern_hi <<= 1;
+                bg_shifter_attrib_lo <<= 1;
+                bg_shifter_attrib_hi <<= 1;
+                loadBackgroundShifters();
+            }
+            int ntAddr = 0x2000 | (v & 0x0FFF);
+            if (listener != null) {
+                listener.nametableFetch(ntAddr);
+            }
+            bg_next_tile_id = readVram(ntAddr);
+
+            // Dots 8*tile+3, +5/+7, +8: attribute, pattern row, coarse X; then the remaining shifts.
+            bg_next_tile_attrib = readVram(0x23C0 | (v & 0x0C00) | ((v >> 4) & 0x38) | ((v >> 2) & 0x07));
+            if (((v >> 5) & 2) != 0) bg_next_tile_attrib >>= 4;
+            if ((v & 2) != 0) bg_next_tile_attrib >>= 2;
+            bg_next_tile_attrib &= 0x03;
+            int row = readPatternRow(patternBase + (bg_next_tile_id * 16) + ((v >> 12) & 7));
+            bg_next_tile_lsb = row >>> 24;
+            bg_next_tile_msb = (row >>> 16) & 0xFF;
+            lineTiles[tile + 2] = row;
+            lineAttribs[tile + 2] = ATTRIBUTE_ROWS[bg_next_tile_attrib];
+            incrementScrollX();
+            bg_shifter_pattern_lo <<= 7;
+            bg_shifter_pattern_hi <<= 7;
+            bg_shifter_attrib_lo <<= 7;
+            bg_shifter_attrib_hi <<= 7;
+        }
+
+        boolean renderBg = (maskReg & 0x08) != 0;
+        int firstBgPixel = !renderBg ? WIDTH : ((maskReg & 0x02) != 0 ? 0 : 8);
+        if (draw || spriteZeroHitPossible()) {
+            for (int x = 0; x < WIDTH; x++) {
+                int bgPixel = 0;
+                int bgPalette = 0;
+                if (x >= firstBgPixel) {
+                    int p = x + xFine;
+                    int shift = 14 - ((p & 7) << 1);
+                    bgPixel = (lineTiles[p >> 3] >>> shift) & 3;
+                    bgPalette = (lineAttribs[p >> 3] >>> shift) & 3;
+                }
+                int entry = composePixel(x, bgPixel, bgPalette);
+                if (draw) {
+                    frameBuffer[line + x] = lineColors[entry];
+                }
+            }
+        }
+        incrementScrollY();
+    }
+
+    /** A pattern row, as {@link #readVram} would read its two bytes. */
+    private int readPatternRow(int addr) {
+        if (cartridge == null) {
+            return 0;
+        }
+        addr &= 0x1FFF;
+        if (a12Listener != null) {
+            watchA12(addr); // addr + 8 has the same A12, so one check covers both reads
+        }
+        if (mapperPatternReads) {
+            return cartridge.getMapper().ppuReadRow(addr);
+        }
+        return cartridge.getChrCache().row(patternOffsets[addr >>> 10] + (addr & 0x3FF));
+    }
+
+    /** Report a rising edge of A12 on a pattern table access. */
+    private void watchA12(int addr) {
+        int a12 = (addr >> 12) & 1;
+        if (a12 > lastA12) {
+            a12Listener.a12Rose();
+        }
+        lastA12 = a12;
+    }
+
+    private static final int[] ATTRIBUTE_ROWS = {
+            ChrCache.pack(0x00, 0x00), ChrCache.pack(0xFF, 0x00), ChrCache.pack(0x00, 0xFF), ChrCache.pack(0xFF, 0xFF)
+    };
+
     private void tickOneDot() {
         // --- Pre-render scanline clear flags ---
         if (scanline == -1 && dot == 1) {
@@ -135,13 +437,15 @@ public class PPU {
 
         // --- VBlank start ---
         if (scanline == 241 && dot == 1) {
+            if (drawingFrame) {
+                frameBuffer = frames.publish();
+            }
             statusVBlank = true;
             if (ctrlNmiEnable) {
                 bus.requestNmi();
             }
-            // Notify MMC5 of vblank
-            if (cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                ((Mapper5) cartridge.getMapper()).startVBlank();
+            if (listener != null) {
+                listener.vblankStarted();
             }
         }
 
@@ -158,9 +462,8 @@ public class PPU {
             // Background fetching and shifting
             if (renderingEnabled) {
 
-                // *** MMC5:  Signal start of BG fetches at dot 1 ***
-                if (dot == 1 && cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                    ((Mapper5) cartridge.getMapper()).setFetchingSprites(false);
+                if (dot == 1 && listener != null) {
+                    listener.scanlineStarted(scanline);
                 }
 
                 // Shifter update (dots 2-257 and 322-337)
@@ -177,9 +480,8 @@ public class PPU {
                         case 0:
                             loadBackgroundShifters();
                             int ntAddr = 0x2000 | (v & 0x0FFF);
-                            // Notify MMC5 of nametable fetch for EXRAM mode
-                            if (cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                                ((Mapper5) cartridge.getMapper()).notifyNametableFetch(ntAddr);
+                            if (listener != null) {
+                                listener.nametableFetch(ntAddr);
                             }
                             bg_next_tile_id = readVram(ntAddr);
                             break;
@@ -201,17 +503,12 @@ public class PPU {
                     }
                 }
 
-                // *** MMC5: Signal start of sprite fetches at dot 257 ***
-                if (dot == 257 && cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                    ((Mapper5) cartridge.getMapper()).setFetchingSprites(true);
+                if (dot == 340 && listener != null) {
+                    listener.scanlineEnded(scanline);
                 }
 
-                // *** MMC5: Signal end of sprite fetches AND scanline end at dot 340 ***
-                if (dot == 340 && cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                    ((Mapper5) cartridge.getMapper()).setFetchingSprites(false);
-                    if (scanline >= 0) {
-                        ((Mapper5) cartridge.getMapper()).onScanlineEnd(scanline);
-                    }
+                if (dot == 340 && a12HazardLines > 0) {
+                    a12HazardLines--;
                 }
 
                 // End of visible scanline - increment Y
@@ -225,9 +522,8 @@ public class PPU {
                     v = (v & ~0x041F) | (t & 0x041F);
                 }
 
-                // *** MMC5: Signal start of sprite fetches at dot 257 ***
-                if (dot == 257 && cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                    ((Mapper5) cartridge.getMapper()).setFetchingSprites(true);
+                if (dot == 257 && listener != null) {
+                    listener.spriteFetchStarted(scanline);
                 }
 
                 // Sprite pattern fetches (dots 257-320)
@@ -235,9 +531,8 @@ public class PPU {
                     fetchSpriteData();
                 }
 
-                // *** MMC5: Signal end of sprite fetches at dot 321 ***
-                if (dot == 321 && cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                    ((Mapper5) cartridge.getMapper()).setFetchingSprites(false);
+                if (dot == 321 && listener != null) {
+                    listener.spriteFetchEnded(scanline);
                 }
 
                 // Pre-render:  copy vertical bits from t to v
@@ -260,6 +555,7 @@ public class PPU {
             if (scanline > 260) {
                 scanline = -1;
                 oddFrame = !oddFrame;
+                startFrame();
                 if (oddFrame && renderingEnabled) {
                     dot = 1;
                 }
@@ -267,6 +563,32 @@ public class PPU {
         }
     }
 
+    /** Decide whether the frame now starting is drawn or skipped. */
+    private void startFrame() {
+        if (videoEnabled && framesSkipped >= frameSkip) {
+            drawingFrame = true;
+            framesSkipped = 0;
+        } else {
+            drawingFrame = false;
+            if (videoEnabled) framesSkipped++;
+        }
+    }
+
+    /** Draw one frame in every {@code skip + 1}; takes effect from the next frame. */
+    public void setFrameSkip(int skip) { frameSkip = Math.max(0, skip); }
+    public int getFrameSkip() { return frameSkip; }
+    /** With video off no frame is drawn or published; CPU-visible PPU state is unaffected. */
+    public void setVideoEnabled(boolean enabled) { videoEnabled = enabled; }
+    public boolean isVideoEnabled() { return videoEnabled; }
+
+    /**
+     * Whether a pixel could still set sprite 0 hit this line. Sprite 0, when
+     * fetched, is always in slot 0; a skipped frame composes pixels only then.
+     */
+    private boolean spriteZeroHitPossible() {
+        return !statusSpriteZeroHit && spriteCount > 0 && spriteIsZero[0] && (maskReg & 0x18) == 0x18;
+    }
+
     /**
      * Fetch sprite pattern data during dots 257-320.
      * Each sprite takes 8 dots:  2 NT garbage, 2 AT garbage, 2 pattern lo, 2 pattern hi.
@@ -300,6 +622,7 @@ public class PPU {
                     spriteXPos[spriteIndex] = sprX;
                     spriteAttrs[spriteIndex] = attr;
                     spriteIsZero[spriteIndex] = (spriteScanline[spriteIndex] == 0);
+                    spriteLineValid = false;
                     break;
             }
         } else {
@@ -322,6 +645,7 @@ public class PPU {
                     spriteXPos[spriteIndex] = 0xFF;
                     spriteAttrs[spriteIndex] = 0;
                     spriteIsZero[spriteIndex] = false;
+                    spriteLineValid = false;
                     break;
             }
         }
@@ -380,6 +704,7 @@ public class PPU {
     private void evaluateSprites() {
         Arrays.fill(spriteScanline, -1);
         spriteCount = 0;
+        spriteLineValid = false;
         int height = ctrlSpriteSize8x16 ? 16 : 8;
 
         for (int i = 0; i < 64; i++) {
@@ -439,14 +764,15 @@ public class PPU {
     }
 
     private void renderPixel() {
+        if (!drawingFrame && !spriteZeroHitPossible()) {
+            return;
+        }
         int x = dot - 1;
         int bgPixel = 0;
         int bgPalette = 0;
 
         boolean renderBg = (maskReg & 0x08) != 0;
         boolean renderBgLeft = (maskReg & 0x02) != 0;
-        boolean renderSpr = (maskReg & 0x10) != 0;
-        boolean renderSprLeft = (maskReg & 0x04) != 0;
 
         // Background pixel from shifters
         if (renderBg && (renderBgLeft || x >= 8)) {
@@ -460,6 +786,22 @@ public class PPU {
             bgPalette = (pal1 << 1) | pal0;
         }
 
+        int entry = composePixel(x, bgPixel, bgPalette);
+        if (drawingFrame) {
+            frameBuffer[scanline * WIDTH + x] = pixelIndex(entry);
+        }
+    }
+
+    /**
+     * Mix the sprites over a background pixel, updating sprite 0 hit, and return
+     * the palette entry to show (palette * 4 + pixel, 0 for the backdrop).
+     */
+    private int composePixel(int x, int bgPixel, int bgPalette) {
+        boolean renderBg = (maskReg & 0x08) != 0;
+        boolean renderBgLeft = (maskReg & 0x02) != 0;
+        boolean renderSpr = (maskReg & 0x10) != 0;
+        boolean renderSprLeft = (maskReg & 0x04) != 0;
+
         // Sprite pixel from pre-fetched data
         int fgPixel = 0;
         int fgPalette = 0;
@@ -467,34 +809,15 @@ public class PPU {
         boolean spriteZeroRendered = false;
 
         if (renderSpr && (renderSprLeft || x >= 8)) {
-            for (int i = 0; i < spriteCount; i++) {
-                int sprX = spriteXPos[i];
-
-                if (x < sprX || x >= sprX + 8) continue;
-
-                int col = x - sprX;
-                int attr = spriteAttrs[i];
-
-                boolean flipH = (attr & 0x40) != 0;
-                if (flipH) {
-                    col = 7 - col;
-                }
-
-                int bit = 7 - col;
-                int p0 = (spritePatternLo[i] >> bit) & 1;
-                int p1 = (spritePatternHi[i] >> bit) & 1;
-                int sprPixel = (p1 << 1) | p0;
-
-                if (sprPixel != 0) {
-                    fgPixel = sprPixel;
-                    fgPalette = (attr & 3) + 4;
-                    fgPriority = (attr & 0x20) == 0;
-
-                    if (spriteIsZero[i]) {
-                        spriteZeroRendered = true;
-                    }
-                    break;
-                }
+            if (!spriteLineValid) {
+                drawSpriteLine();
+            }
+            int sprite = spriteLine[x];
+            if (sprite != 0) {
+                fgPixel = sprite & 3;
+                fgPalette = (sprite >> 2) & 7;
+                fgPriority = (sprite & SPRITE_FRONT) != 0;
+                spriteZeroRendered = (sprite & SPRITE_ZERO) != 0;
             }
         }
 
@@ -531,20 +854,50 @@ public class PPU {
             finalPalette = bgPalette;
         }
 
-        frameBuffer[scanline * WIDTH + x] = getColorFromPalette(finalPalette, finalPixel);
+        return (finalPixel == 0) ? 0 : (finalPalette << 2) | finalPixel;
     }
 
-    private int getColorFromPalette(int paletteNum, int pixel) {
-        int addr = 0x3F00 + (paletteNum << 2) + pixel;
-        if (pixel == 0) addr = 0x3F00;
+    /**
+     * Draw the fetched sprite slots into {@link #spriteLine}, highest slot first so
+     * that the lowest-numbered opaque sprite ends up on top at each x.
+     */
+    private void drawSpriteLine() {
+        Arrays.fill(spriteLine, 0);
+        for (int i = spriteCount - 1; i >= 0; i--) {
+            int sprX = spriteXPos[i];
+            int attr = spriteAttrs[i];
+            int lo = spritePatternLo[i];
+            int hi = spritePatternHi[i];
+            if ((lo | hi) == 0) continue;
+            if ((attr & 0x40) == 0) { // pixel 0 is bit 7 unless flipped horizontally
+                lo = Integer.reverse(lo) >>> 24;
+                hi = Integer.reverse(hi) >>> 24;
+            }
+            int flags = (((attr & 3) + 4) << 2)
+                    | ((attr & 0x20) == 0 ? SPRITE_FRONT : 0)
+                    | (spriteIsZero[i] ? SPRITE_ZERO : 0);
+            int end = Math.min(sprX + 8, WIDTH);
+            for (int x = sprX; x < end; x++) {
+                int pixel = (lo & 1) | ((hi & 1) << 1);
+                if (pixel != 0) {
+                    spriteLine[x] = flags | pixel;
+                }
+                lo >>= 1;
+                hi >>= 1;
+            }
+        }
+        spriteLineValid = true;
+    }
 
-        int palIndex = readPalette(addr) & 0x3F;
+    /** The indexed pixel for a palette entry as returned by {@link #composePixel}. */
+    private short pixelIndex(int entry) {
+        int palIndex = readPalette(0x3F00 + entry) & 0x3F;
 
         if ((maskReg & 0x01) != 0) {
             palIndex &= 0x30;
         }
 
-        return NES_PALETTE[palIndex];
+        return (short) (palIndex | ((maskReg & 0xE0) << 1));
     }
 
     // --- Register Interface & Memory Access ---
@@ -573,6 +926,7 @@ public class PPU {
                     ppuDataReadBuffer = readVram(addr);
                 }
                 incrementVramAddr();
+                a12HazardLines = 2;
                 openBus = value;
                 return value;
             default:
@@ -584,6 +938,9 @@ public class PPU {
         openBus = value;
         int reg = 0x2000 | (address & 7);
         value &= 0xFF;
+        if (reg == 0x2000 || reg == 0x2001 || reg == 0x2006 || reg == 0x2007) {
+            a12HazardLines = 2;
+        }
         switch (reg) {
             case 0x2000:
                 ctrlNmiEnable = (value & 0x80) != 0;
@@ -593,8 +950,8 @@ public class PPU {
                 ctrlAddrInc32 = (value & 0x04) != 0;
                 ctrlNametableSelect = (value & 0x03);
                 t = (t & ~0x0C00) | ((value & 0x03) << 10);
-                if (cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                    ((Mapper5) cartridge.getMapper()).setSpriteSize8x16(ctrlSpriteSize8x16);
+                if (listener != null) {
+                    listener.spriteSizeChanged(ctrlSpriteSize8x16);
                 }
                 break;
             case 0x2001:
@@ -640,6 +997,18 @@ public class PPU {
         oam[oamAddr++ & 0xFF] = (byte) data;
     }
 
+    /**
+     * A whole OAM DMA page at once: the 256 bytes at {@code offset} in
+     * {@code page}, written from OAMADDR on and wrapping around, exactly as
+     * 256 {@link #oamDmaWrite} calls would (OAMADDR ends where it started).
+     */
+    public void oamDmaPage(byte[] page, int offset) {
+        int start = oamAddr & 0xFF;
+        int first = 256 - start;
+        System.arraycopy(page, offset, oam, start, first);
+        System.arraycopy(page, offset + first, oam, 0, start);
+    }
+
     private void incrementVramAddr() {
         v = (v + (ctrlAddrInc32 ? 32 : 1)) & 0x7FFF;
     }
@@ -647,22 +1016,25 @@ public class PPU {
     private int readVram(int addr) {
         addr &= 0x3FFF;
 
-        // Pattern tables ($0000-$1FFF) - ALWAYS go through mapper for CHR access
+        // Pattern tables ($0000-$1FFF)
         if (addr < 0x2000) {
-            if (cartridge != null) {
+            if (a12Listener != null) {
+                watchA12(addr);
+            }
+            if (mapperPatternReads) {
                 return cartridge.getMapper().ppuRead(addr) & 0xFF;
             }
-            return 0;
+            int slot = addr >>> 10;
+            return patternPages[slot][patternOffsets[slot] + (addr & 0x3FF)] & 0xFF;
         }
 
         // Nametables ($2000-$3EFF)
         if (addr < 0x3F00) {
-            // For MMC5, let the mapper handle nametables
-            if (cartridge != null && cartridge.getMapper() instanceof Mapper5) {
+            if (mapperNametableReads) {
                 return cartridge.getMapper().ppuRead(addr) & 0xFF;
             }
-            // Standard mirroring for other mappers
-            return vram[applyMirroring(addr & 0x0FFF)] & 0xFF;
+            int slot = (addr >> 10) & 3;
+            return ntRead[slot][ntOffset[slot] | (addr & 0x3FF)] & 0xFF;
         }
 
         return 0;
@@ -673,6 +1045,9 @@ public class PPU {
 
         // Pattern tables ($0000-$1FFF) - ALWAYS go through mapper for CHR-RAM writes
         if (addr < 0x2000) {
+            if (a12Listener != null) {
+                watchA12(addr);
+            }
             if (cartridge != null) {
                 cartridge.getMapper().ppuWrite(addr, value);
             }
@@ -681,27 +1056,14 @@ public class PPU {
 
         // Nametables ($2000-$3EFF)
         if (addr < 0x3F00) {
-            // For MMC5, let the mapper handle nametables
-            if (cartridge != null && cartridge.getMapper() instanceof Mapper5) {
-                cartridge.getMapper().ppuWrite(addr, value);
-                return;
+            int slot = (addr >> 10) & 3;
+            byte[] page = ntWrite[slot];
+            if (page != null) {
+                page[ntOffset[slot] | (addr & 0x3FF)] = (byte) value;
             }
-            // Standard mirroring for other mappers
-            vram[applyMirroring(addr & 0x0FFF)] = (byte) value;
         }
     }
 
-    private int applyMirroring(int addr) {
-        Cartridge. Mirroring mode = (cartridge != null) ? cartridge.getMirroring() : Cartridge.Mirroring.VERTICAL;
-        return switch (mode) {
-            case HORIZONTAL -> ((addr >> 1) & 0x400) | (addr & 0x3FF);
-            case SINGLE_SCREEN_A -> addr & 0x3FF;           // All map to first 1KB
-            case SINGLE_SCREEN_B -> 0x400 | (addr & 0x3FF); // All map to second 1KB
-            case FOUR_SCREEN -> addr & 0xFFF;               // Full 4KB (if supported)
-            default -> addr & 0x7FF;                        // VERTICAL:  standard 2KB mirroring
-        };
-    }
-
     private int readPalette(int addr) {
         addr &= 0x1F;
         if (addr == 0x10 || addr == 0x14 || addr == 0x18 || addr == 0x1C) {
@@ -719,7 +1081,27 @@ public class PPU {
     }
 
     // --- Getters ---
-    public int[] getFrameBuffer() { return frameBuffer; }
+    /**
+     * The last complete frame as RGB, converted from the indexed frame on each call.
+     * Call on the emulation thread; unlike {@link #getFrameExchange} readers it does
+     * not take the frame, so both can be used together.
+     */
+    public int[] getFrameBuffer() {
+        toRgb(frames.newest(), rgbFrame);
+        return rgbFrame;
+    }
+    /** The last complete frame as indexed pixels (see {@link #toRgb}); not a copy, same thread rule. */
+    public short[] getIndexedFrameBuffer() { return frames.newest(); }
+    /** Frames published at each vblank, for a reader on another thread. */
+    public FrameExchange getFrameExchange() { return frames; }
+    /** RGB for an indexed pixel: colour index in bits 0-5, PPUMASK emphasis bits in bits 6-8. */
+    public static int toRgb(int indexedPixel) { return RGB_BY_INDEX[indexedPixel & 0x1FF]; }
+    /** Convert an indexed frame into {@code rgb}, e.g. straight into an image's raster. */
+    public static void toRgb(short[] frame, int[] rgb) {
+        for (int i = 0; i < frame.length; i++) {
+            rgb[i] = RGB_BY_INDEX[frame[i]];
+        }
+    }
     public boolean isRenderEnabled() { return (maskReg & 0x18) != 0; }
     public int getT() { return t; }
     public int getV() { return v; }
@@ -741,4 +1123,26 @@ public class PPU {
             0xFFFFFF, 0xC0DFFF, 0xD3D2FF, 0xE8C8FF, 0xFBC2FF, 0xFFC4EA, 0xFFCECA, 0xF8D5A9,
             0xE4E594, 0xCFEE96, 0xBDF4AB, 0xB3F3CC, 0xB5EBF2, 0xB8B8B8, 0x000000, 0x000000
     };
-}
\ No newline at end of file
+
+    // NES_PALETTE once per emphasis combination, back to back so an indexed pixel
+    // is its own index. Each emphasis bit (red, green, blue for PPUMASK bits 5-7)
+    // darkens the other two channels.
+    private static final double EMPHASIS_ATTENUATION = 0.816328;
+    private static final int[] RGB_BY_INDEX = new int[8 * 64];
+
+    static {
+        for (int emphasis = 0; emphasis < 8; emphasis++) {
+            double r = 1.0, g = 1.0, b = 1.0;
+            if ((emphasis & 1) != 0) { g *= EMPHASIS_ATTENUATION; b *= EMPHASIS_ATTENUATION; }
+            if ((emphasis & 2) != 0) { r *= EMPHASIS_ATTENUATION; b *= EMPHASIS_ATTENUATION; }
+            if ((emphasis & 4) != 0) { r *= EMPHASIS_ATTENUATION; g *= EMPHASIS_ATTENUATION; }
+            for (int i = 0; i < 64; i++) {
+                int rgb = NES_PALETTE[i];
+                int red = (int) Math.round(((rgb >> 16) & 0xFF) * r);
+                int green = (int) Math.round(((rgb >> 8) & 0xFF) * g);
+                int blue = (int) Math.round((rgb & 0xFF) * b);
+                RGB_BY_INDEX[(emphasis << 6) | i] = (red << 16) | (green << 8) | blue;
+            }
+        }
+    }
+}
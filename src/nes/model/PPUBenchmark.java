@@ -0,0 +1,99 @@
+package nes.model;
+
+/**
+ * Frame-rate benchmark for the PPU on a sprite-heavy scene: 64 overlapping
+ * 8x16 sprites arranged eight to a line over 128 scanlines, mixed palettes,
+ * flips and priorities, over a background that is opaque everywhere. Runs the
+ * scene through the whole console with the scanline and dot renderers and
+ * prints frames per second for each.
+ */
+public final class PPUBenchmark {
+    private PPUBenchmark() {}
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int FRAMES_PER_ROUND = 300;
+
+    // Copies the sprite table at $8100 to $0200, loads the palette from $8200,
+    // DMAs the sprites to OAM, selects 8x16 sprites, turns rendering on (no
+    // left-edge clipping) and idles.
+    private static final int[] PROGRAM = {
+            0xA2, 0x00,             // 8000 LDX #$00
+            0xBD, 0x00, 0x81,       // 8002 LDA $8100,X
+            0x9D, 0x00, 0x02,       // 8005 STA $0200,X
+            0xE8,                   // 8008 INX
+            0xD0, 0xF7,             // 8009 BNE $8002
+            0xA9, 0x3F,             // 800B LDA #$3F
+            0x8D, 0x06, 0x20,       // 800D STA $2006
+            0xA9, 0x00,             // 8010 LDA #$00
+            0x8D, 0x06, 0x20,       // 8012 STA $2006
+            0xBD, 0x00, 0x82,       // 8015 LDA $8200,X
+            0x8D, 0x07, 0x20,       // 8018 STA $2007
+            0xE8,                   // 801B INX
+            0xE0, 0x20,             // 801C CPX #$20
+            0xD0, 0xF5,             // 801E BNE $8015
+            0xA9, 0x02,             // 8020 LDA #$02
+            0x8D, 0x14, 0x40,       // 8022 STA $4014
+            0xA9, 0x20,             // 8025 LDA #$20
+            0x8D, 0x00, 0x20,       // 8027 STA $2000
+            0xA9, 0x1E,             // 802A LDA #$1E
+            0x8D, 0x01, 0x20,       // 802C STA $2001
+            0x4C, 0x2F, 0x80        // 802F JMP $802F
+    };
+
+    /** Run the benchmark and print frames per second for each renderer. */
+    public static void run() {
+        NESConsole console = new NESConsole();
+        console.insertCartridge(makeCartridge());
+
+        boolean[] renderers = {true, false};
+        double[] best = new double[renderers.length];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (int r = 0; r < renderers.length; r++) {
+                console.setScanlineRenderer(renderers[r]);
+                long start = System.nanoTime();
+                for (int f = 0; f < FRAMES_PER_ROUND; f++) {
+                    console.nextFrame();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round >= WARMUP_ROUNDS) {
+                    best[r] = Math.max(best[r], FRAMES_PER_ROUND / seconds);
+                }
+            }
+        }
+        for (int r = 0; r < renderers.length; r++) {
+            System.out.printf("PPU %-8s renderer, 8 sprites/line: %8.1f frames/s%n",
+                    renderers[r] ? "scanline" : "dot", best[r]);
+        }
+    }
+
+    /** NROM cartridge running {@link #PROGRAM}, with its sprite and palette tables and a busy CHR ROM. */
+    static Cartridge makeCartridge() {
+        byte[] rom = new byte[16 + 16 * 1024 + 8 * 1024];
+        rom[0] = 'N'; rom[1] = 'E'; rom[2] = 'S'; rom[3] = 0x1A;
+        rom[4] = 1; // 1x16KB PRG, mirrored at $C000
+        rom[5] = 1; // 1x8KB CHR
+        for (int i = 0; i < PROGRAM.length; i++) {
+            rom[16 + i] = (byte) PROGRAM[i];
+        }
+        for (int i = 0; i < 64; i++) {
+            int group = i >> 3;
+            int slot = i & 7;
+            int base = 16 + 0x100 + i * 4;
+            rom[base] = (byte) (8 + group * 28);                       // Y
+            rom[base + 1] = (byte) (i * 2 + (i & 1));                  // tile, both pattern tables
+            rom[base + 2] = (byte) ((i & 3) | ((i & 4) << 4) | ((i & 8) << 2)); // palette, flip H, behind bg
+            rom[base + 3] = (byte) (slot * 24 + group * 5);            // X, neighbours overlap
+        }
+        for (int i = 0; i < 32; i++) {
+            rom[16 + 0x200 + i] = (byte) ((i * 7 + 1) & 0x3F);
+        }
+        for (int i = 0; i < 8 * 1024; i++) {
+            rom[16 + 16 * 1024 + i] = (byte) (i * 37 + (i >> 4));
+        }
+        // Reset vector at $FFFC -> $8000
+        rom[16 + 0x3FFC] = 0x00;
+        rom[16 + 0x3FFD] = (byte) 0x80;
+        return Cartridge.loadFromBytes(rom, "PPU_BENCH");
+    }
+}
@@ -146,8 +146,248 @@ public final class PPUSelfTest {
         PPUWriteCtx(PPU ppu, int addr) { this.ppu = ppu; this.addr = addr; }
     }
 
+    /**
+     * A small NROM program: NMI handler, OAM DMA, sprite-0 polling and a
+     * mid-frame scroll split.
+     */
+    private static byte[] catchUpTestRom() {
+        int[] program = new int[] {
+                0x78,                   // 8000 SEI
+                0xA2, 0xFF,             // 8001 LDX #$FF
+                0x9A,                   // 8003 TXS
+                0x2C, 0x02, 0x20,       // 8004 BIT $2002     vwait:
+                0x10, 0xFB,             // 8007 BPL $8004
+                0xA9, 0x3F,             // 8009 LDA #$3F
+                0x8D, 0x06, 0x20,       // 800B STA $2006
+                0xA9, 0x00,             // 800E LDA #$00
+                0x8D, 0x06, 0x20,       // 8010 STA $2006
+                0xA2, 0x00,             // 8013 LDX #$00
+                0x8A,                   // 8015 TXA           pal:
+                0x8D, 0x07, 0x20,       // 8016 STA $2007
+                0xE8,                   // 8019 INX
+                0xE0, 0x20,             // 801A CPX #$20
+                0xD0, 0xF7,             // 801C BNE $8015
+                0xA9, 0x20,             // 801E LDA #$20
+                0x8D, 0x06, 0x20,       // 8020 STA $2006
+                0xA9, 0x00,             // 8023 LDA #$00
+                0x8D, 0x06, 0x20,       // 8025 STA $2006
+                0xA0, 0x04,             // 8028 LDY #$04
+                0xA2, 0x00,             // 802A LDX #$00      outer:
+                0x8A,                   // 802C TXA           inner:
+                0x8D, 0x07, 0x20,       // 802D STA $2007
+                0xE8,                   // 8030 INX
+                0xD0, 0xF9,             // 8031 BNE $802C
+                0x88,                   // 8033 DEY
+                0xD0, 0xF4,             // 8034 BNE $802A
+                0xA9, 0x20,             // 8036 LDA #$20
+                0x8D, 0x00, 0x02,       // 8038 STA $0200     sprite 0: Y
+                0xA9, 0x01,             // 803B LDA #$01
+                0x8D, 0x01, 0x02,       // 803D STA $0201     tile
+                0xA9, 0x00,             // 8040 LDA #$00
+                0x8D, 0x02, 0x02,       // 8042 STA $0202     attributes
+                0xA9, 0x40,             // 8045 LDA #$40
+                0x8D, 0x03, 0x02,       // 8047 STA $0203     X
+                0xA9, 0x02,             // 804A LDA #$02
+                0x8D, 0x14, 0x40,       // 804C STA $4014
+                0xA9, 0x80,             // 804F LDA #$80
+                0x8D, 0x00, 0x20,       // 8051 STA $2000     NMI on
+                0xA9, 0x1E,             // 8054 LDA #$1E
+                0x8D, 0x01, 0x20,       // 8056 STA $2001     rendering on
+                0xAD, 0x02, 0x20,       // 8059 LDA $2002     main:
+                0x29, 0x40,             // 805C AND #$40
+                0xF0, 0xF9,             // 805E BEQ $8059
+                0xA5, 0x10,             // 8060 LDA $10
+                0x8D, 0x05, 0x20,       // 8062 STA $2005
+                0x8D, 0x05, 0x20,       // 8065 STA $2005
+                0xE6, 0x10,             // 8068 INC $10
+                0x2C, 0x02, 0x20,       // 806A BIT $2002     clear:
+                0x70, 0xFB,             // 806D BVS $806A
+                0x4C, 0x59, 0x80,       // 806F JMP $8059
+                0x48,                   // 8072 PHA           nmi:
+                0xA9, 0x00,             // 8073 LDA #$00
+                0x8D, 0x05, 0x20,       // 8075 STA $2005
+                0x8D, 0x05, 0x20,       // 8078 STA $2005
+                0xA9, 0x02,             // 807B LDA #$02
+                0x8D, 0x14, 0x40,       // 807D STA $4014
+                0xE6, 0x11,             // 8080 INC $11
+                0x68,                   // 8082 PLA
+                0x40                    // 8083 RTI
+        };
+
+        byte[] rom = new byte[16 + 16 * 1024 + 8 * 1024];
+        rom[0] = 'N'; rom[1] = 'E'; rom[2] = 'S'; rom[3] = 0x1A;
+        rom[4] = 1; // 1x16KB PRG
+        rom[5] = 1; // 1x8KB CHR
+        for (int i = 0; i < program.length; i++) {
+            rom[16 + i] = (byte) program[i];
+        }
+        int vectors = 16 + 0x3FFA;
+        rom[vectors] = 0x72; rom[vectors + 1] = (byte) 0x80;     // NMI   -> $8072
+        rom[vectors + 2] = 0x00; rom[vectors + 3] = (byte) 0x80; // RESET -> $8000
+        rom[vectors + 4] = (byte) 0x83; rom[vectors + 5] = (byte) 0x80; // IRQ   -> $8083 (RTI)
+        for (int i = 0; i < 8 * 1024; i++) {
+            rom[16 + 16 * 1024 + i] = (byte) (i * 37 + (i >> 4));
+        }
+
+        return rom;
+    }
+
+    /**
+     * Run the catch-up test program with lazy PPU catch-up and with per-cycle PPU
+     * stepping, and require identical frames.
+     */
+    public static boolean runCatchUpEquivalence() {
+        byte[] rom = catchUpTestRom();
+        int[][] frames = new int[2][];
+        for (int mode = 0; mode < 2; mode++) {
+            NESConsole console = new NESConsole();
+            console.setLazyPpuSync(mode == 0);
+            console.insertCartridge(Cartridge.loadFromBytes(rom, "TEST_CATCH_UP"));
+            for (int f = 0; f < 30; f++) {
+                console.nextFrame();
+            }
+            frames[mode] = console.getFrameBuffer().clone();
+        }
+        return java.util.Arrays.equals(frames[0], frames[1]);
+    }
+
+    /**
+     * Run the same program with the scanline engine on and off (both with lazy
+     * catch-up). Frames must match, and with the engine on some lines must have
+     * used it while the mid-screen scroll writes still force the dot path.
+     */
+    public static boolean runScanlineEquivalence() {
+        byte[] rom = catchUpTestRom();
+        int[][] frames = new int[2][];
+        long scanlineLines = 0, dotLines = 0;
+        for (int mode = 0; mode < 2; mode++) {
+            NESConsole console = new NESConsole();
+            console.setScanlineRenderer(mode == 0);
+            console.insertCartridge(Cartridge.loadFromBytes(rom, "TEST_SCANLINE"));
+            for (int f = 0; f < 30; f++) {
+                console.nextFrame();
+            }
+            frames[mode] = console.getFrameBuffer().clone();
+            if (mode == 0) {
+                scanlineLines = console.getScanlineEngineLines();
+                dotLines = console.getDotEngineLines();
+            }
+        }
+        return scanlineLines > 0 && dotLines > 0 && java.util.Arrays.equals(frames[0], frames[1]);
+    }
+
+    /**
+     * The {@link PPUBenchmark} sprite scene on both renderers: frames must match,
+     * and sprite colours must show up next to the 4 background ones (the scene's
+     * 32 palette entries are all distinct).
+     */
+    public static boolean runSpriteLineTest() {
+        int[][] frames = new int[2][];
+        for (int mode = 0; mode < 2; mode++) {
+            NESConsole console = new NESConsole();
+            console.setScanlineRenderer(mode == 0);
+            console.insertCartridge(PPUBenchmark.makeCartridge());
+            for (int f = 0; f < 5; f++) {
+                console.nextFrame();
+            }
+            frames[mode] = console.getFrameBuffer().clone();
+        }
+        long colours = java.util.Arrays.stream(frames[0]).distinct().count();
+        return colours > 4 && java.util.Arrays.equals(frames[0], frames[1]);
+    }
+
+    /**
+     * The RGB frame is the indexed frame through the palette tables, and the
+     * emphasis bits select a darkened table (red emphasis keeps red, dims green).
+     */
+    public static boolean runIndexedFrameTest() {
+        NESConsole console = new NESConsole();
+        console.insertCartridge(PPUBenchmark.makeCartridge());
+        console.nextFrame();
+        short[] indexed = console.getIndexedFrameBuffer();
+        int[] rgb = console.getFrameBuffer();
+        for (int i = 0; i < rgb.length; i++) {
+            if (rgb[i] != PPU.toRgb(indexed[i])) return false;
+        }
+        int white = PPU.toRgb(0x20);
+        int redEmphasis = PPU.toRgb(0x20 | (1 << 6));
+        return white == 0xFFFFFF && (redEmphasis >> 16) == 0xFF && ((redEmphasis >> 8) & 0xFF) < 0xFF;
+    }
+
+    /**
+     * Triple-buffer handoff: nothing to read before the first publish, a reader
+     * that misses a frame gets the newest one, the writer is never handed the
+     * buffer the reader holds, and peeking at the newest frame from the writer
+     * side leaves it for the reader.
+     */
+    public static boolean runFrameExchangeTest() {
+        FrameExchange frames = new FrameExchange(4);
+        if (frames.poll() != null) return false;
+        short[] back = frames.backBuffer();
+        back[0] = 1;
+        back = frames.publish();
+        back[0] = 2;
+        back = frames.publish(); // frame 1 dropped unread
+        short[] front = frames.poll();
+        if (front == null || front[0] != 2 || frames.poll() != null) return false;
+        for (int i = 0; i < 3; i++) {
+            back[0] = (short) (3 + i);
+            back = frames.publish();
+            if (back == front) return false;
+        }
+        short[] newest = frames.newest();
+        return newest[0] == 5 && frames.poll() == newest && frames.newest() == newest;
+    }
+
+    /**
+     * OAM DMA from RAM: the page lands in OAM starting at OAMADDR and wraps,
+     * and each DMA stalls 513 cycles, 514 when its $4014 write fell on an odd
+     * cycle (the gaps between the DMAs make both happen).
+     */
+    public static boolean runOamDmaTest() {
+        CPU cpu = new CPU();
+        PPU ppu = new PPU();
+        RAM ram = new RAM(2 * 1024);
+        Bus bus = new Bus(cpu, ppu, new APU(), ram);
+        int[] program = {
+                0xA9, 0x10,             // 0000 LDA #$10
+                0x8D, 0x03, 0x20,       // 0002 STA $2003   ; OAMADDR = $10
+                0xA9, 0x02,             // 0005 LDA #$02
+                0x8D, 0x14, 0x40,       // 0007 STA $4014   ; DMA from $0200
+                0xA5, 0x00,             // 000A LDA $00     ; 3 cycles
+                0xA9, 0x02,             // 000C LDA #$02    ; 2 cycles
+                0x8D, 0x14, 0x40,       // 000E STA $4014
+                0xEA,                   // 0011 NOP         ; 2 cycles
+                0x8D, 0x14, 0x40,       // 0012 STA $4014
+        };
+        for (int i = 0; i < program.length; i++) ram.write(i, program[i]);
+        for (int i = 0; i < 256; i++) ram.write(0x200 + i, i ^ 0x5A);
+        cpu.reset();
+
+        boolean sawEven = false, sawOdd = false;
+        for (int i = 0; i < 9; i++) {
+            long writeCycle = bus.getCpuClock() + 4; // STA abs writes on its 4th cycle
+            int used = cpu.stepInstruction();
+            if (i == 3 || i == 6 || i == 8) {
+                int stall = used - 4;
+                if (stall != 513 + (int) (writeCycle & 1)) return false;
+                sawEven |= stall == 513;
+                sawOdd |= stall == 514;
+            }
+        }
+        if (!sawEven || !sawOdd) return false;
+
+        for (int i = 0; i < 256; i++) {
+            ppu.writeRegister(0x2003, (0x10 + i) & 0xFF);
+            if (ppu.readRegister(0x2004) != (i ^ 0x5A)) return false;
+        }
+        return true;
+    }
+
     /** Run all available PPU self-tests. */
     public static boolean runAll() {
-        return runVramIncrementTest() && runMirroringTest();
+        return runVramIncrementTest() && runMirroringTest() && runCatchUpEquivalence()
+                && runScanlineEquivalence() && runSpriteLineTest() && runIndexedFrameTest()
+                && runFrameExchangeTest() && runOamDmaTest();
     }
 }
@@ -0,0 +1,33 @@
+package nes.model;
+
+/**
+ * PPU timing events for mappers that watch more than CHR and nametable reads.
+ * A mapper opts in by implementing this interface; the PPU resolves it once in
+ * {@link PPU#setCartridge} and otherwise skips every hook, so boards that don't
+ * implement it cost nothing per dot.
+ *
+ * Scanline hooks fire only while rendering is enabled, on the pre-render line
+ * (-1) as well as the visible lines (0-239), at the dot named on each method.
+ */
+public interface PpuBusListener {
+    /** Dot 1: background fetches for this line begin. */
+    default void scanlineStarted(int scanline) {}
+
+    /** Dot 257: sprite pattern fetches for the next line begin. */
+    default void spriteFetchStarted(int scanline) {}
+
+    /** Dot 321: sprite fetches are over; the next line's first two tiles are fetched. */
+    default void spriteFetchEnded(int scanline) {}
+
+    /** Dot 340: last dot of the line. */
+    default void scanlineEnded(int scanline) {}
+
+    /** Just before the background nametable byte at {@code address} is read. */
+    default void nametableFetch(int address) {}
+
+    /** Scanline 241, dot 1. Fires whether or not rendering is enabled. */
+    default void vblankStarted() {}
+
+    /** $2000 was written; {@code is8x16} is the new sprite size. */
+    default void spriteSizeChanged(boolean is8x16) {}
+}
@@ -20,6 +20,9 @@ public class RAM {
     /** Return the raw size of this RAM in bytes. */
     public int size() { return data.length; }
 
+    /** Backing array, for the bus page table. */
+    byte[] array() { return data; }
+
     /** Read one byte (unsigned) from RAM. Address wraps within RAM size. */
     public int read(int address) {
         int idx = normalize(address);
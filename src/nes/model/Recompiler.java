@@ -0,0 +1,97 @@
+package nes.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Block compiler for {@link CPU.Execution#RECOMPILER}.
+ * A basic block is a straight run of instructions in PRG ROM, ending after the
+ * first branch/jump/return, at a page boundary, or at {@link #MAX_BLOCK_LENGTH}.
+ * Once a block entry has been reached {@link #HOT_THRESHOLD} times, each of its
+ * instructions is bound into a {@link Step} closure (see {@link CPU#compile}).
+ *
+ * Blocks are keyed by physical PRG ROM offset plus the CPU address they were
+ * compiled for, so a bank switch never runs stale code: the lookup simply finds
+ * whatever the page table now maps at pc. ROM cannot be written, so only RAM
+ * code could be self-modifying, and RAM is always left to the interpreter.
+ * A mapper write that changes the page table mid-block makes the CPU leave the
+ * block at the next instruction boundary.
+ */
+final class Recompiler {
+    static final int HOT_THRESHOLD = 16;
+    static final int MAX_BLOCK_LENGTH = 32;
+
+    @FunctionalInterface
+    interface Step { void run(CPU cpu); }
+
+    static final class Block {
+        final int address;
+        final Step[] steps;
+
+        Block(int address, Step[] steps) {
+            this.address = address;
+            this.steps = steps;
+        }
+    }
+
+    // Per-byte tables for the PRG ROM currently mapped; rebuilt when the cartridge changes.
+    private byte[] rom;
+    private Block[] blocks;
+    private byte[] heat;
+    private long compiledBlocks;
+
+    long getCompiledBlocks() { return compiledBlocks; }
+
+    /** The compiled block starting at pc, or null to interpret this instruction. */
+    Block blockAt(Bus bus, int pc) {
+        int address = pc & 0xFFFF;
+        int page = address >>> 8;
+        byte[] memory = bus.readPage(page);
+        if (memory == null || memory != bus.getPrgRom()) {
+            return null;
+        }
+        if (memory != rom) {
+            rom = memory;
+            blocks = new Block[memory.length];
+            heat = new byte[memory.length];
+        }
+        int index = bus.readOffset(page) + (address & 0xFF);
+        Block block = blocks[index];
+        if (block != null && block.address == address) {
+            return block;
+        }
+        if (heat[index] < HOT_THRESHOLD) {
+            heat[index]++;
+            return null;
+        }
+        block = compile(memory, index, address);
+        blocks[index] = block;
+        if (block == null) {
+            heat[index] = 0; // first instruction straddles the page; back off
+        }
+        return block;
+    }
+
+    private Block compile(byte[] memory, int index, int address) {
+        List<Step> steps = new ArrayList<>();
+        int pc = address;
+        int i = index;
+        while (steps.size() < MAX_BLOCK_LENGTH) {
+            int opcode = memory[i] & 0xFF;
+            int length = CPU.LENGTHS[opcode];
+            if ((pc & 0xFF) + length > 0x100) break;
+            int operands = 0;
+            if (length > 1) operands = memory[i + 1] & 0xFF;
+            if (length > 2) operands |= (memory[i + 2] & 0xFF) << 8;
+            steps.add(CPU.compile(opcode, operands, pc));
+            pc += length;
+            i += length;
+            if (CPU.endsBlock(opcode) || (pc & 0xFF) == 0) break;
+        }
+        if (steps.isEmpty()) {
+            return null;
+        }
+        compiledBlocks++;
+        return new Block(address, steps.toArray(new Step[0]));
+    }
+}
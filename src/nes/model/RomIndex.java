@@ -0,0 +1,354 @@
+package nes.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+
+/**
+ * Index of a ROM library: for every .nes file its iNES header fields, whether
+ * {@link Cartridge} supports its mapper, and CRC32 and SHA-1 of PRG+CHR, so
+ * front ends can list and identify tens of thousands of games without
+ * loading any of them.
+ *
+ * {@link #scan} walks a directory tree on a fork-join pool, one task per
+ * directory and per batch of files, reading only the header and hashing the
+ * ROM data through a memory mapping. Files whose size and modification time
+ * match their entry are skipped, so rescans cost a directory walk.
+ *
+ * The index file is append-only: a magic number, then one record per scanned
+ * file (fixed fields, then the UTF-8 path); a later record for the same path
+ * replaces an earlier one. A torn record at the end is ignored on load and cut
+ * off before the next append. The file is reloaded with one read-only mapping
+ * and a linear pass.
+ */
+public final class RomIndex {
+    private static final long MAGIC = 0x4E4553494458_0001L; // "NESIDX", version 1
+    private static final int FIXED_RECORD_BYTES = 2 + 4 + 4 + 20 + 8 + 8;
+    private static final int FILES_PER_TASK = 32;
+
+    /** Header flags of an entry. */
+    public static final int VERTICAL = 0x01;
+    public static final int BATTERY = 0x02;
+    public static final int TRAINER = 0x04;
+    public static final int FOUR_SCREEN = 0x08;
+    public static final int MAPPER_SUPPORTED = 0x10;
+    /** Not an iNES file, or shorter than its header says; only size and time are meaningful. */
+    public static final int INVALID = 0x20;
+
+    /** One indexed file. */
+    public static final class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final int mapperId;
+        private final int prgBanks;
+        private final int chrBanks;
+        private final int flags;
+        private final int crc32;
+        private final byte[] sha1;
+
+        Entry(String path, long size, long lastModified, int mapperId, int prgBanks, int chrBanks,
+              int flags, int crc32, byte[] sha1) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.mapperId = mapperId;
+            this.prgBanks = prgBanks;
+            this.chrBanks = chrBanks;
+            this.flags = flags;
+            this.crc32 = crc32;
+            this.sha1 = sha1;
+        }
+
+        public String getPath() { return path; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+        public int getMapperId() { return mapperId; }
+        /** PRG ROM size in 16KB units. */
+        public int getPrgBanks() { return prgBanks; }
+        /** CHR ROM size in 8KB units; 0 means CHR RAM. */
+        public int getChrBanks() { return chrBanks; }
+        public int getFlags() { return flags; }
+        public boolean isValid() { return (flags & INVALID) == 0; }
+        public boolean isMapperSupported() { return (flags & MAPPER_SUPPORTED) != 0; }
+        /** CRC32 of PRG+CHR, as ROM databases list it. */
+        public int getCrc32() { return crc32; }
+        public byte[] getSha1() { return sha1.clone(); }
+
+        public String getSha1Hex() {
+            StringBuilder sb = new StringBuilder(40);
+            for (byte b : sha1) sb.append(String.format("%02x", b));
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s mapper=%d prg=%dx16K chr=%dx8K crc=%08x%s", path, mapperId,
+                    prgBanks, chrBanks, crc32, !isValid() ? " INVALID" : isMapperSupported() ? "" : " UNSUPPORTED");
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long validBytes; // magic plus complete records; 0 while the file is missing or empty
+
+    private RomIndex(Path file) {
+        this.file = file;
+    }
+
+    /** Load the index stored at {@code file}, or start an empty one if there is none yet. */
+    public static RomIndex open(Path file) throws IOException {
+        RomIndex index = new RomIndex(file);
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return index;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            if (data.remaining() < 8 || data.getLong() != MAGIC) {
+                throw new IOException("Not a ROM index: " + file);
+            }
+            index.validBytes = data.position();
+            while (data.remaining() >= FIXED_RECORD_BYTES) {
+                int pathBytes = data.getShort() & 0xFFFF;
+                if (data.remaining() < FIXED_RECORD_BYTES - 2 + pathBytes) {
+                    break; // torn append
+                }
+                int header = data.getInt();
+                int crc32 = data.getInt();
+                byte[] sha1 = new byte[20];
+                data.get(sha1);
+                long size = data.getLong();
+                long lastModified = data.getLong();
+                byte[] path = new byte[pathBytes];
+                data.get(path);
+                Entry entry = new Entry(new String(path, StandardCharsets.UTF_8), size, lastModified,
+                        header & 0xFF, (header >>> 8) & 0xFF, (header >>> 16) & 0xFF, header >>> 24, crc32, sha1);
+                index.entries.put(entry.path, entry);
+                index.validBytes = data.position();
+            }
+        }
+        return index;
+    }
+
+    public int size() { return entries.size(); }
+
+    public Collection<Entry> entries() { return Collections.unmodifiableCollection(entries.values()); }
+
+    /** The entry for {@code path} (as stored: absolute and normalized), or null. */
+    public Entry get(String path) { return entries.get(path); }
+
+    /** Indexed files that are valid iNES images with a mapper {@link Cartridge} can't run. */
+    public List<Entry> unsupported() {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isValid() && !entry.isMapperSupported()) result.add(entry);
+        }
+        return result;
+    }
+
+    /** {@link #scan(Path, ForkJoinPool)} on the common pool. */
+    public int scan(Path root) throws IOException {
+        return scan(root, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Index every .nes file under {@code root} that is new or changed since it
+     * was last indexed, append the results to the index file, and return how
+     * many files were (re)indexed. Files and directories that can't be read
+     * are skipped and the first such error is thrown at the end.
+     */
+    public int scan(Path root, ForkJoinPool pool) throws IOException {
+        Queue<Entry> found = new ConcurrentLinkedQueue<>();
+        Queue<IOException> errors = new ConcurrentLinkedQueue<>();
+        pool.invoke(new DirectoryTask(root.toAbsolutePath().normalize(), entries, found, errors));
+        if (!found.isEmpty()) {
+            append(found);
+        }
+        for (Entry entry : found) {
+            entries.put(entry.path, entry);
+        }
+        if (!errors.isEmpty()) {
+            throw errors.peek(); // after keeping what could be read
+        }
+        return found.size();
+    }
+
+    private void append(Collection<Entry> added) throws IOException {
+        List<ByteBuffer> records = new ArrayList<>();
+        if (validBytes == 0) {
+            records.add(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, MAGIC));
+        }
+        for (Entry entry : added) {
+            byte[] path = entry.path.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(FIXED_RECORD_BYTES + path.length).order(ByteOrder.LITTLE_ENDIAN);
+            record.putShort((short) path.length);
+            record.putInt(entry.mapperId | entry.prgBanks << 8 | entry.chrBanks << 16 | entry.flags << 24);
+            record.putInt(entry.crc32);
+            record.put(entry.sha1);
+            record.putLong(entry.size);
+            record.putLong(entry.lastModified);
+            record.put(path);
+            records.add(record.flip());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Drop a torn record left by an interrupted append so new records stay aligned
+            channel.truncate(validBytes);
+            channel.position(validBytes);
+            for (ByteBuffer record : records) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            validBytes = channel.position();
+        }
+    }
+
+    /**
+     * One directory: forks a task per subdirectory and per batch of its files.
+     * Subdirectories reached through symbolic links are not followed, so a link
+     * back up the tree can't loop.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private static final class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+        private final Map<String, Entry> known;
+        private final Queue<Entry> found;
+        private final Queue<IOException> errors;
+
+        DirectoryTask(Path directory, Map<String, Entry> known, Queue<Entry> found, Queue<IOException> errors) {
+            this.directory = directory;
+            this.known = known;
+            this.found = found;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> batch = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (Path child : children) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        tasks.add(new DirectoryTask(child, known, found, errors));
+                    } else if (child.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".nes")) {
+                        batch.add(child);
+                        if (batch.size() == FILES_PER_TASK) {
+                            tasks.add(new FilesTask(batch, known, found, errors));
+                            batch = new ArrayList<>();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                errors.add(e);
+                return;
+            }
+            if (!batch.isEmpty()) {
+                tasks.add(new FilesTask(batch, known, found, errors));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    @SuppressWarnings("serial") // tasks are never serialized
+    private static final class FilesTask extends RecursiveAction {
+        private final List<Path> files;
+        private final Map<String, Entry> known;
+        private final Queue<Entry> found;
+        private final Queue<IOException> errors;
+
+        FilesTask(List<Path> files, Map<String, Entry> known, Queue<Entry> found, Queue<IOException> errors) {
+            this.files = files;
+            this.known = known;
+            this.found = found;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            for (Path path : files) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    Entry entry = known.get(path.toString()); // only read while scanning
+                    long modified = attributes.lastModifiedTime().toMillis();
+                    if (entry == null || entry.size != attributes.size() || entry.lastModified != modified) {
+                        found.add(indexFile(path, attributes.size(), modified));
+                    }
+                } catch (IOException e) {
+                    errors.add(e);
+                }
+            }
+        }
+    }
+
+    /** Read the header of one file and hash its PRG+CHR. */
+    static Entry indexFile(Path path, long size, long lastModified) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // fill the header, or stop at the end of the file
+            }
+            if (header.hasRemaining() || header.getInt(0) != 0x4E45531A) { // "NES" 0x1A
+                return new Entry(path.toString(), size, lastModified, 0, 0, 0, INVALID, 0, new byte[20]);
+            }
+            int prgBanks = header.get(4) & 0xFF;
+            int chrBanks = header.get(5) & 0xFF;
+            int flags6 = header.get(6) & 0xFF;
+            int flags7 = header.get(7) & 0xFF;
+            int mapperId = ((flags7 & 0xF0) | ((flags6 >>> 4) & 0x0F)) & 0xFF;
+            int flags = 0;
+            if ((flags6 & 0x01) != 0) flags |= VERTICAL;
+            if ((flags6 & 0x02) != 0) flags |= BATTERY;
+            if ((flags6 & 0x04) != 0) flags |= TRAINER;
+            if ((flags6 & 0x08) != 0) flags |= FOUR_SCREEN;
+            if (Cartridge.isMapperSupported(mapperId)) flags |= MAPPER_SUPPORTED;
+
+            long start = 16 + ((flags6 & 0x04) != 0 ? 512 : 0);
+            long length = prgBanks * 0x4000L + chrBanks * 0x2000L;
+            if (channel.size() < start + length) {
+                flags |= INVALID;
+                length = Math.max(0, channel.size() - start);
+            }
+            CRC32 crc = new CRC32();
+            MessageDigest sha1 = sha1();
+            if (length > 0) {
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                crc.update(data.duplicate());
+                sha1.update(data);
+            }
+            return new Entry(path.toString(), size, lastModified, mapperId, prgBanks, chrBanks, flags,
+                    (int) crc.getValue(), sha1.digest());
+        }
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
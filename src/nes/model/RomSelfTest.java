@@ -0,0 +1,150 @@
+package nes.model;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * ROM loading self-tests: shared images in {@link RomStore} and the library
+ * {@link RomIndex}. Smoke tests run from the command line, like the CPU, PPU
+ * and APU ones.
+ */
+public final class RomSelfTest {
+    private RomSelfTest() {}
+
+    /**
+     * Shared ROM images: cartridges loaded from identical files share PRG and
+     * CHR ROM, while CHR RAM, PRG RAM and bank state stay per cartridge.
+     */
+    public static boolean runRomSharing() {
+        try {
+            RomStore store = new RomStore();
+            byte[] mmc3 = TestRoms.image(4, 2, true, 4, null, 0x00, 0x80);
+            Path file = Files.createTempFile("romstore", ".nes");
+            try {
+                Files.write(file, mmc3);
+                Cartridge a = store.load(file.toString());
+                Cartridge b = store.load(file.toString());
+                Cartridge c = store.load(mmc3.clone(), "copy");
+                if (a.getPrgRom() != b.getPrgRom() || a.getChr() != b.getChr() || a.getPrgRom() != c.getPrgRom()) return false;
+                if (a.getChrCache() != b.getChrCache() || store.size() != 1) return false;
+                a.getMapper().cpuWrite(0x8000, 0x06); a.getMapper().cpuWrite(0x8001, 3);
+                a.getMapper().cpuWrite(0x6000, 0x5A);
+                if (b.getMapper().cpuRead(0x8000) != 0x10 || b.getMapper().cpuRead(0x6000) != 0) return false;
+                if (a.getMapper().cpuRead(0x8000) != 0x20 || a.getMapper().cpuRead(0x6000) != 0x5A) return false;
+            } finally {
+                Files.delete(file);
+            }
+
+            byte[] uxrom = TestRoms.image(2, 0, true, 2, null, 0x00, 0x80); // CHR RAM
+            Cartridge a = store.load(uxrom, "a");
+            Cartridge b = store.load(uxrom, "b");
+            if (a.getPrgRom() != b.getPrgRom() || a.getChr() == b.getChr() || store.size() != 2) return false;
+            a.getMapper().ppuWrite(0x0010, 0x77);
+            if (b.getMapper().ppuRead(0x0010) != 0 || a.getMapper().ppuRead(0x0010) != 0x77) return false;
+
+            byte[] axrom = TestRoms.image(2, 1, true, 7, null, 0x00, 0x80); // AxROM may write CHR ROM
+            Cartridge x = store.load(axrom, "x");
+            Cartridge y = store.load(axrom, "y");
+            x.getMapper().ppuWrite(0x0010, 0x77);
+            return x.getPrgRom() == y.getPrgRom() && y.getMapper().ppuRead(0x0010) == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Library index: a parallel scan records header fields, PRG+CHR hashes and
+     * mapper support, survives a reload from disk, and a rescan picks up only
+     * changed files without following a symbolic link back up the tree.
+     */
+    public static boolean runRomIndex() {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("romindex");
+            Path sub = Files.createDirectory(dir.resolve("sub"));
+            byte[] mmc3 = TestRoms.image(2, 1, true, 4, null, 0x00, 0x80);
+            byte[] unsupported = TestRoms.image(1, 1, false, 9, null, 0x00, 0x80);
+            Files.write(dir.resolve("a.nes"), mmc3);
+            Files.write(sub.resolve("b.NES"), unsupported);
+            Files.write(sub.resolve("c.nes"), new byte[] {1, 2, 3});
+            Files.write(sub.resolve("notes.txt"), mmc3);
+            Path indexFile = dir.resolve("library.idx");
+
+            RomIndex index = RomIndex.open(indexFile);
+            ForkJoinPool pool = new ForkJoinPool(2);
+            int indexed = index.scan(dir, pool);
+            pool.shutdown();
+            if (indexed != 3 || index.size() != 3) return false;
+            RomIndex reloaded = RomIndex.open(indexFile);
+            RomIndex.Entry a = reloaded.get(dir.resolve("a.nes").toAbsolutePath().normalize().toString());
+            if (a == null || reloaded.size() != 3 || a.getMapperId() != 4 || !a.isMapperSupported() || !a.isValid()) return false;
+            if ((a.getFlags() & RomIndex.VERTICAL) == 0 || a.getPrgBanks() != 2 || a.getChrBanks() != 1) return false;
+            CRC32 crc = new CRC32();
+            crc.update(mmc3, 16, mmc3.length - 16);
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            sha1.update(mmc3, 16, mmc3.length - 16);
+            if (a.getCrc32() != (int) crc.getValue() || !Arrays.equals(a.getSha1(), sha1.digest())) return false;
+            if (reloaded.unsupported().size() != 1 || reloaded.unsupported().get(0).getMapperId() != 9) return false;
+
+            Files.createSymbolicLink(sub.resolve("loop"), dir);
+            if (reloaded.scan(dir) != 0) return false;
+            Files.write(sub.resolve("c.nes"), mmc3);
+            Files.setLastModifiedTime(sub.resolve("c.nes"), FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            if (reloaded.scan(dir) != 1) return false;
+            RomIndex.Entry c = RomIndex.open(indexFile).get(sub.resolve("c.nes").toAbsolutePath().normalize().toString());
+            return c != null && c.isValid() && c.getCrc32() == a.getCrc32() && runTornIndex(dir);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return false;
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * An index whose last append was cut short loads without the torn record,
+     * and the next scan writes over it instead of after it.
+     */
+    private static boolean runTornIndex(Path parent) throws IOException {
+        Path dir = Files.createDirectory(parent.resolve("torn"));
+        Files.write(dir.resolve("a.nes"), TestRoms.image(1, 1, false, 0, null, 0x00, 0x80));
+        Path indexFile = parent.resolve("torn.idx");
+        if (RomIndex.open(indexFile).scan(dir) != 1) return false;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+        RomIndex torn = RomIndex.open(indexFile);
+        if (torn.size() != 0) return false;
+        Files.write(dir.resolve("b.nes"), TestRoms.image(1, 1, false, 2, null, 0x00, 0x80));
+        Files.write(dir.resolve("c.nes"), TestRoms.image(1, 0, false, 3, null, 0x00, 0x80));
+        if (torn.scan(dir) != 3) return false;
+        RomIndex reloaded = RomIndex.open(indexFile);
+        for (String name : new String[] {"a.nes", "b.nes", "c.nes"}) {
+            if (reloaded.get(dir.resolve(name).toAbsolutePath().normalize().toString()) == null) return false;
+        }
+        return reloaded.size() == 3;
+    }
+
+    private static void deleteTree(Path dir) {
+        if (dir == null) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** Run all ROM loading self-tests. */
+    public static boolean runAll() {
+        return runRomSharing() && runRomIndex();
+    }
+}
@@ -0,0 +1,176 @@
+package nes.model;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Read-only ROM images shared by every cartridge loaded from the same file
+ * contents, so a process hosting many consoles of one game holds its PRG and
+ * CHR ROM once. Files are read through a read-only memory mapping (no
+ * whole-file heap copy), keyed by a digest of their bytes, and parsed once;
+ * cartridges then share the image's arrays and decoded CHR. CHR RAM and mapper
+ * PRG RAM stay private to each cartridge.
+ *
+ * Images are copied out of the mapping into heap arrays once because every
+ * hot path (bus page table, bank tables, decoded CHR) indexes plain arrays.
+ * An image lives as long as some cartridge still uses it.
+ */
+public final class RomStore {
+    private static final RomStore SHARED = new RomStore();
+
+    private final Map<String, WeakReference<Image>> images = new HashMap<>();
+
+    /** The process-wide store {@link Cartridge#loadFromFile} uses. */
+    public static RomStore shared() { return SHARED; }
+
+    /** A store of its own; most callers want {@link #shared}. */
+    public RomStore() {
+    }
+
+    /** A cartridge backed by the shared image of the file at {@code path}. */
+    public Cartridge load(String path) throws IOException {
+        Path file = Paths.get(path);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Cartridge(image(data), path);
+        }
+    }
+
+    /** A cartridge backed by the shared image of {@code data}. */
+    public Cartridge load(byte[] data, String title) {
+        return new Cartridge(image(ByteBuffer.wrap(data)), title);
+    }
+
+    /** Images currently held by at least one cartridge. */
+    public int size() {
+        synchronized (images) {
+            pruneCleared();
+            return images.size();
+        }
+    }
+
+    private Image image(ByteBuffer data) {
+        String key = digest(data.duplicate());
+        synchronized (images) {
+            WeakReference<Image> ref = images.get(key);
+            Image image = (ref != null) ? ref.get() : null;
+            if (image != null) {
+                return image;
+            }
+        }
+        // Parse outside the lock; if another thread got there first, use its image.
+        Image parsed = Image.parse(data.duplicate());
+        synchronized (images) {
+            pruneCleared();
+            WeakReference<Image> ref = images.get(key);
+            Image image = (ref != null) ? ref.get() : null;
+            if (image == null) {
+                image = parsed;
+                images.put(key, new WeakReference<>(image));
+            }
+            return image;
+        }
+    }
+
+    private void pruneCleared() {
+        Iterator<WeakReference<Image>> it = images.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().get() == null) it.remove();
+        }
+    }
+
+    private static String digest(ByteBuffer data) {
+        try {
+            int length = data.remaining();
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(data);
+            StringBuilder sb = new StringBuilder(length + ":");
+            for (byte b : md.digest()) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * One parsed iNES image: header fields and the ROM arrays, which nothing
+     * writes to. CHR RAM boards have no CHR array here.
+     */
+    static final class Image {
+        final byte[] prgRom;
+        final byte[] chrRom;
+        final int chrSize;
+        final int mapperId;
+        final Cartridge.Mirroring mirroring;
+        private ChrCache chrCache;
+
+        private Image(byte[] prgRom, byte[] chrRom, int chrSize, int mapperId, Cartridge.Mirroring mirroring) {
+            this.prgRom = prgRom;
+            this.chrRom = chrRom;
+            this.chrSize = chrSize;
+            this.mapperId = mapperId;
+            this.mirroring = mirroring;
+        }
+
+        /** Decoded rows of {@link #chrRom}, made on first use. */
+        synchronized ChrCache chrCache() {
+            if (chrCache == null) {
+                chrCache = ChrCache.forRom(chrRom);
+            }
+            return chrCache;
+        }
+
+        /** Parse the iNES image from the position of {@code data} to its limit. */
+        static Image parse(ByteBuffer data) {
+            int base = data.position();
+            int length = data.remaining();
+            if (length < 16)
+                throw new IllegalArgumentException("Data too short for iNES header");
+            if (!(data.get(base) == 'N' && data.get(base + 1) == 'E' && data.get(base + 2) == 'S'
+                    && (data.get(base + 3) & 0xFF) == 0x1A)) {
+                throw new IllegalArgumentException("Not an iNES file (invalid magic)");
+            }
+            int prgBanks = data.get(base + 4) & 0xFF;
+            int chrBanks = data.get(base + 5) & 0xFF;
+            int flags6 = data.get(base + 6) & 0xFF;
+            int flags7 = data.get(base + 7) & 0xFF;
+            boolean hasTrainer = (flags6 & 0x04) != 0;
+            boolean fourScreen = (flags6 & 0x08) != 0;
+            boolean vertical = (flags6 & 0x01) != 0;
+            int mapperId = ((flags7 & 0xF0) | ((flags6 >>> 4) & 0x0F)) & 0xFF;
+
+            int offset = 16;
+            if (hasTrainer) offset += 512;
+
+            int prgSize = prgBanks * 16 * 1024;
+            if (length < offset + prgSize) throw new IllegalArgumentException("File truncated (PRG)");
+            byte[] prgRom = new byte[prgSize];
+            data.get(base + offset, prgRom);
+            offset += prgSize;
+
+            boolean chrIsRam = (chrBanks == 0);
+            int chrSize = chrIsRam ? 8 * 1024 : chrBanks * 8 * 1024;
+            byte[] chrRom = null;
+            if (!chrIsRam) {
+                if (length < offset + chrSize) throw new IllegalArgumentException("File truncated (CHR)");
+                chrRom = new byte[chrSize];
+                data.get(base + offset, chrRom);
+            }
+
+            Cartridge.Mirroring mirroring = fourScreen ? Cartridge.Mirroring.FOUR_SCREEN
+                    : (vertical ? Cartridge.Mirroring.VERTICAL : Cartridge.Mirroring.HORIZONTAL);
+            return new Image(prgRom, chrRom, chrSize, mapperId, mirroring);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package nes.model;
+
+import java.util.Arrays;
+
+/**
+ * iNES images for the self-tests. Public only so the mapper tests in
+ * {@code nes.model.mapper} can build their cartridges from it too.
+ */
+public final class TestRoms {
+    private TestRoms() {}
+
+    /**
+     * A tiny iNES image. PRG bank n (16KB) is filled with {@code prgFill[n]},
+     * or $10 * (n + 1) past the end of {@code prgFill} or when it is null; CHR
+     * ROM is blank, and 0 CHR banks means CHR RAM. Images of 32KB PRG or more
+     * get the reset vector at $FFFC-$FFFD.
+     */
+    public static byte[] image(int prgBanks16k, int chrBanks8k, boolean verticalMirroring, int mapperId,
+                               byte[] prgFill, int vectorLo, int vectorHi) {
+        int prgSize = prgBanks16k * 16 * 1024;
+        byte[] rom = new byte[16 + prgSize + chrBanks8k * 8 * 1024];
+        rom[0] = 'N'; rom[1] = 'E'; rom[2] = 'S'; rom[3] = 0x1A;
+        rom[4] = (byte) prgBanks16k; // PRG banks
+        rom[5] = (byte) chrBanks8k; // CHR banks
+        rom[6] = (byte) (((mapperId & 0x0F) << 4) | (verticalMirroring ? 0x01 : 0));
+        rom[7] = (byte) (mapperId & 0xF0);
+
+        // Fill PRG banks with recognizable patterns
+        for (int b = 0; b < prgBanks16k; b++) {
+            byte fill = prgFill != null && b < prgFill.length ? prgFill[b] : (byte) (0x10 * (b + 1));
+            Arrays.fill(rom, 16 + b * 16 * 1024, 16 + (b + 1) * 16 * 1024, fill);
+        }
+        // Place a reset vector at the end of last bank ($FFFC-$FFFD)
+        if (prgSize >= 0x8000) {
+            rom[16 + prgSize - 4] = (byte) vectorLo;
+            rom[16 + prgSize - 3] = (byte) vectorHi;
+        }
+        return rom;
+    }
+}
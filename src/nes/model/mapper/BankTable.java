@@ -0,0 +1,141 @@
+package nes.model.mapper;
+
+import nes.model.Bus;
+import nes.model.PPU;
+
+/**
+ * Resolved bank layout of a mapper: CPU $6000-$FFFF as 8KB PRG slots and PPU
+ * $0000-$1FFF as 1KB CHR slots, each a backing array plus an offset into it.
+ * Mappers re-point slots when a bank register is written; reads then take one
+ * shift, one mask and one array index, with no bank arithmetic per access.
+ *
+ * Bank numbers wrap modulo the backing array, so selects past the end of a
+ * small image mirror it like the unconnected bank lines on a real board.
+ * Unmapped slots read as 0. The PRG slots are copied into the bus page table
+ * on request; the CHR slots can be kept in the PPU's pattern page table.
+ */
+final class BankTable {
+    private static final int PRG_SHIFT = 13;
+    private static final int PRG_MASK = 0x1FFF;
+    private static final int CHR_SHIFT = 10;
+    private static final int CHR_MASK = 0x3FF;
+    private static final int FIRST_PRG_SLOT = 0x6000 >>> PRG_SHIFT;
+
+    // Indexed by address >>> 13; slots below $6000 stay unmapped
+    private final byte[][] prgData = new byte[8][];
+    private final int[] prgOffset = new int[8];
+    private final boolean[] prgWritable = new boolean[8];
+    // Indexed by address >>> 10
+    private final byte[][] chrData = new byte[8][];
+    private final int[] chrOffset = new int[8];
+    private final byte[] unmapped = new byte[0x2000];
+    private PPU ppu; // follows every CHR slot change once attached
+
+    BankTable() {
+        unmapPrg(0x0000, 0x10000);
+        for (int slot = 0; slot < 8; slot++) {
+            chrData[slot] = unmapped;
+        }
+    }
+
+    /**
+     * Point {@code size} bytes at {@code address} (8KB multiples) at bank
+     * {@code bank} of {@code data}, counted in {@code size} units.
+     */
+    void mapPrg(int address, int size, byte[] data, int bank, boolean writable) {
+        if (data == null || data.length == 0) {
+            unmapPrg(address, size);
+            return;
+        }
+        int first = address >>> PRG_SHIFT;
+        long base = (long) bank * size;
+        for (int i = 0; i < size >>> PRG_SHIFT; i++) {
+            prgData[first + i] = data;
+            prgOffset[first + i] = (int) Math.floorMod(base + ((long) i << PRG_SHIFT), (long) data.length);
+            prgWritable[first + i] = writable;
+        }
+    }
+
+    void unmapPrg(int address, int size) {
+        int first = address >>> PRG_SHIFT;
+        for (int i = 0; i < size >>> PRG_SHIFT; i++) {
+            prgData[first + i] = unmapped;
+            prgOffset[first + i] = 0;
+            prgWritable[first + i] = false;
+        }
+    }
+
+    /** Point {@code size} bytes at {@code address} (1KB multiples) at bank {@code bank} of {@code data}. */
+    void mapChr(int address, int size, byte[] data, int bank) {
+        int first = address >>> CHR_SHIFT;
+        long base = (long) bank * size;
+        for (int i = 0; i < size >>> CHR_SHIFT; i++) {
+            if (data == null || data.length == 0) {
+                chrData[first + i] = unmapped;
+                chrOffset[first + i] = 0;
+            } else {
+                chrData[first + i] = data;
+                chrOffset[first + i] = (int) Math.floorMod(base + ((long) i << CHR_SHIFT), (long) data.length);
+            }
+            if (ppu != null) {
+                ppu.mapPatternPage(first + i, chrData[first + i], chrOffset[first + i]);
+            }
+        }
+    }
+
+    /** @param address CPU address, 0-$FFFF */
+    int readPrg(int address) {
+        int slot = address >>> PRG_SHIFT;
+        return prgData[slot][prgOffset[slot] + (address & PRG_MASK)] & 0xFF;
+    }
+
+    /** Store into a slot mapped writable; other writes are dropped. */
+    void writePrg(int address, int value) {
+        int slot = address >>> PRG_SHIFT;
+        if (prgWritable[slot]) {
+            prgData[slot][prgOffset[slot] + (address & PRG_MASK)] = (byte) value;
+        }
+    }
+
+    /** @param address pattern table address, 0-$1FFF */
+    int readChr(int address) {
+        int slot = address >>> CHR_SHIFT;
+        return chrData[slot][chrOffset[slot] + (address & CHR_MASK)] & 0xFF;
+    }
+
+    /** Offset of a pattern table address in the array its slot maps, e.g. for {@code ChrCache.row}. */
+    int chrOffset(int address) {
+        return chrOffset[address >>> CHR_SHIFT] + (address & CHR_MASK);
+    }
+
+    /** Whether the slot holding a pattern table address maps CHR rather than nothing. */
+    boolean isChrMapped(int address) {
+        return chrData[address >>> CHR_SHIFT] != unmapped;
+    }
+
+    /** Serve the PPU's pattern fetches from the CHR slots, now and after every change. */
+    void attachPpu(PPU ppu) {
+        this.ppu = ppu;
+        showChr(ppu);
+    }
+
+    /** Copy the CHR slots into the PPU's pattern page table once. */
+    void showChr(PPU ppu) {
+        for (int slot = 0; slot < 8; slot++) {
+            ppu.mapPatternPage(slot, chrData[slot], chrOffset[slot]);
+        }
+        ppu.setMapperPatternReads(false);
+    }
+
+    /** Copy the PRG slots into the bus page table. */
+    void mapCpu(Bus bus) {
+        for (int slot = FIRST_PRG_SLOT; slot < 8; slot++) {
+            int address = slot << PRG_SHIFT;
+            if (prgData[slot] == unmapped) {
+                bus.unmapCpuPages(address, 1 << PRG_SHIFT);
+            } else {
+                bus.mapCpuPages(address, 1 << PRG_SHIFT, prgData[slot], prgOffset[slot], prgWritable[slot]);
+            }
+        }
+    }
+}
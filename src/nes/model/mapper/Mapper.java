@@ -2,6 +2,8 @@ package nes.model.mapper;
 
 import nes.model.Bus;
 import nes.model.Cartridge;
+import nes.model.ChrCache;
+import nes.model.PPU;
 
 /**
  * Interface for memory mappers. Mappers are responsible for handling CPU and PPU
@@ -10,6 +12,16 @@ import nes.model.Cartridge;
 public interface Mapper {
     void setCartridge(Cartridge cartridge);
     void setBus(Bus bus); // For IRQ signaling
+    /**
+     * Called once the cartridge is in the PPU. Mappers that switch mirroring keep
+     * the PPU's nametable page table current: {@link PPU#updateMirroring} re-reads
+     * {@link Cartridge#getMirroring}, {@link PPU#mapNametable} maps a page directly.
+     * Likewise {@link PPU#mapPatternPage} keeps its pattern page table current;
+     * until a mapper turns off {@link PPU#setMapperPatternReads}, pattern
+     * fetches go through {@link #ppuRead}.
+     */
+    default void setPpu(PPU ppu) {
+    }
     int cpuRead(int address);
     void cpuWrite(int address, int value);
     // Overload for cycle-aware writes
@@ -18,5 +30,23 @@ public interface Mapper {
     }
     int ppuRead(int address);
     void ppuWrite(int address, int value);
+    /**
+     * One 8-pixel pattern row: the bytes at {@code address} and {@code address + 8},
+     * read in that order with the same side effects as two ppuRead calls, packed
+     * as a {@link ChrCache} row. Mappers with plain CHR banking serve it from the
+     * cartridge's pre-decoded cache instead.
+     */
+    default int ppuReadRow(int address) {
+        int lo = ppuRead(address);
+        int hi = ppuRead(address + 8);
+        return ChrCache.pack(lo, hi);
+    }
     void reset();
+    /**
+     * Whether a PPU-clocked scanline IRQ can currently fire. While armed, the bus
+     * keeps the PPU caught up around each scanline's sprite-fetch window.
+     */
+    default boolean isScanlineIrqArmed() {
+        return false;
+    }
 }
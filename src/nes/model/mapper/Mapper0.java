@@ -2,6 +2,7 @@ package nes.model.mapper;
 
 import nes.model.Bus;
 import nes.model.Cartridge;
+import nes.model.PPU;
 
 /**
  * Mapper 0: NROM
@@ -12,32 +13,31 @@ import nes.model.Cartridge;
 public class Mapper0 implements Mapper {
 
     private Cartridge cartridge;
+    private final BankTable banks = new BankTable();
 
     @Override
     public void setCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
+        // Fixed layout; 16KB images mirror into $C000
+        banks.mapPrg(0x8000, 0x8000, cartridge.getPrgRom(), 0, false);
+        banks.mapChr(0x0000, 0x2000, cartridge.getChr(), 0);
     }
 
     @Override
     public void setBus(Bus bus) {
-        // Mapper 0 does not use IRQs, so we don't need to store the bus.
+        // Mapper 0 does not use IRQs; the bus is only needed to map PRG ROM.
+        banks.mapCpu(bus);
+    }
+
+    @Override
+    public void setPpu(PPU ppu) {
+        banks.attachPpu(ppu);
     }
 
     @Override
     public int cpuRead(int address) {
-        address &= 0xFFFF;
-        if (address >= 0x6000 && address <= 0x7FFF) {
-            // PRG RAM (if available)
-            return 0; // Not implemented in this simple version
-        }
-        if (address >= 0x8000) {
-            // PRG ROM
-            int prgRomSize = cartridge.getPrgRom().length;
-            // If 16KB, mirror $8000-$BFFF to $C000-$FFFF
-            int mappedAddr = (address - 0x8000) % prgRomSize;
-            return cartridge.getPrgRom()[mappedAddr] & 0xFF;
-        }
-        return 0;
+        // PRG RAM is not implemented in this simple version, so $6000-$7FFF reads 0
+        return banks.readPrg(address & 0xFFFF);
     }
 
     @Override
@@ -56,22 +56,22 @@ public class Mapper0 implements Mapper {
 
     @Override
     public int ppuRead(int address) {
-        address &= 0x1FFF;
-        byte[] chr = cartridge.getChr();
-        if (address < chr.length) {
-            return chr[address] & 0xFF;
-        }
-        return 0;
+        return banks.readChr(address & 0x1FFF);
+    }
+
+    @Override
+    public int ppuReadRow(int address) {
+        return cartridge.getChrCache().row(banks.chrOffset(address & 0x1FFF));
     }
 
     @Override
     public void ppuWrite(int address, int value) {
         // NROM typically has CHR ROM, but some variants have CHR RAM.
         // We'll assume CHR RAM is possible.
-        address &= 0x1FFF;
-        byte[] chr = cartridge.getChr();
-        if (cartridge.isChrRam() && address < chr.length) {
-            chr[address] = (byte) value;
+        if (cartridge.isChrRam()) {
+            int offset = banks.chrOffset(address & 0x1FFF);
+            cartridge.getChr()[offset] = (byte) value;
+            cartridge.chrWritten(offset);
         }
     }
 
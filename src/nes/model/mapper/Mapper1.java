@@ -2,6 +2,7 @@ package nes.model.mapper;
 
 import nes.model.Bus;
 import nes.model.Cartridge;
+import nes.model.PPU;
 
 /**
  * Mapper 1: MMC1
@@ -12,6 +13,8 @@ import nes.model.Cartridge;
 public class Mapper1 implements Mapper {
 
     private Cartridge cartridge;
+    private Bus bus;
+    private PPU ppu;
 
     // Shift register (5 writes)
     private int shiftRegister;
@@ -27,6 +30,7 @@ public class Mapper1 implements Mapper {
 
     private final byte[] prgRam = new byte[8 * 1024];
     private boolean prgRamEnabled = true; // always enabled (bit 4 of reg3 ignored here)
+    private final BankTable banks = new BankTable();
 
     public Mapper1() {
         reset();
@@ -35,69 +39,71 @@ public class Mapper1 implements Mapper {
     @Override
     public void setCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
+        updateBanks();
     }
 
     @Override
     public void setBus(Bus bus) {
-        // Mapper 1 does not use IRQs, so we don't need to store the bus.
+        // Mapper 1 does not use IRQs; the bus is kept to remap PRG on bank switches.
+        this.bus = bus;
+        banks.mapCpu(bus);
     }
 
     @Override
-    public int cpuRead(int address) {
-        address &= 0xFFFF;
+    public void setPpu(PPU ppu) {
+        this.ppu = ppu;
+        banks.attachPpu(ppu);
+    }
 
-        if (address >= 0x6000 && address <= 0x7FFF) {
-            if (prgRamEnabled) return prgRam[address - 0x6000] & 0xFF;
-            return 0;
+    /** Resolve the PRG and CHR bank registers into the bank table and the bus page table. */
+    private void updateBanks() {
+        if (cartridge == null) return;
+        byte[] prg = cartridge.getPrgRom();
+        int numBanks = prg.length / 16384;
+        if (numBanks <= 0) numBanks = 1;
+
+        int lowBank;
+        int highBank;
+        switch ((control >> 2) & 0x03) {
+            case 0:
+            case 1: // 32 KB mode (ignore bit 0); both halves map the same 16KB bank
+                lowBank = highBank = (prgBank & 0x0E) % numBanks;
+                break;
+            case 2:
+                lowBank = 0;
+                highBank = (prgBank & 0x0F) % numBanks;
+                break;
+            case 3:
+            default:
+                lowBank = (prgBank & 0x0F) % numBanks;
+                highBank = numBanks - 1;
+                break;
         }
+        banks.mapPrg(0x8000, 0x4000, prg, lowBank, false);
+        banks.mapPrg(0xC000, 0x4000, prg, highBank, false);
 
-        if (address >= 0x8000) {
-            int prgMode = (control >> 2) & 0x03;
-            int bank = 0;
-            int offset;
+        if (prgRamEnabled) {
+            banks.mapPrg(0x6000, 0x2000, prgRam, 0, true);
+        } else {
+            banks.unmapPrg(0x6000, 0x2000);
+        }
 
-            int numBanks = cartridge.getPrgRom().length / 16384;
-            if (numBanks <= 0) numBanks = 1;
+        byte[] chr = cartridge.getChr();
+        int chr4kBanks = Math.max(1, chr.length / 4096);
+        if ((control & 0x10) == 0) {
+            // 8 KB mode (ignore bit 0)
+            banks.mapChr(0x0000, 0x2000, chr, (chrBank0 >> 1) % Math.max(1, chr4kBanks / 2));
+        } else {
+            banks.mapChr(0x0000, 0x1000, chr, chrBank0 % chr4kBanks);
+            banks.mapChr(0x1000, 0x1000, chr, chrBank1 % chr4kBanks);
+        }
 
-            switch (prgMode) {
-                case 0:
-                case 1: { // 32 KB mode (ignore bit 0)
-                    bank = (prgBank & 0x0E); // Ignore lowest bit
-                    bank %= numBanks; // Wrap to available banks
-                    offset = address - 0x8000;
-                    break;
-                }
-                case 2: { // First bank fixed at $8000, switch bank at $C000
-                    if (address < 0xC000) {
-                        bank = 0; // Fixed to first bank
-                        offset = address - 0x8000;
-                    } else {
-                        bank = prgBank & 0x0F; // Switchable bank
-                        bank %= numBanks; // Wrap to available banks
-                        offset = address - 0xC000;
-                    }
-                    break;
-                }
-                case 3:
-                default: { // Last bank fixed at $C000, switch bank at $8000
-                    if (address < 0xC000) {
-                        bank = prgBank & 0x0F; // Switchable bank
-                        bank %= numBanks; // Wrap to available banks
-                        offset = address - 0x8000;
-                    } else {
-                        bank = numBanks - 1; // Fixed to last bank
-                        offset = address - 0xC000;
-                    }
-                    break;
-                }
-            }
+        if (bus != null) banks.mapCpu(bus);
+    }
 
-            int finalAddr = bank * 16384 + (offset & 0x3FFF);
-            if (finalAddr < cartridge.getPrgRom().length) {
-                return cartridge.getPrgRom()[finalAddr] & 0xFF;
-            }
-        }
-        return 0;
+    @Override
+    public int cpuRead(int address) {
+        return banks.readPrg(address & 0xFFFF);
     }
 
     @Override
@@ -112,7 +118,7 @@ public class Mapper1 implements Mapper {
 
         // Writes below $8000: only PRG RAM region honored
         if (address >= 0x6000 && address <= 0x7FFF) {
-            if (prgRamEnabled) prgRam[address - 0x6000] = (byte) value;
+            banks.writePrg(address, value);
             return;
         }
         if (address < 0x8000) return;
@@ -127,6 +133,7 @@ public class Mapper1 implements Mapper {
         if ((value & 0x80) != 0) {
             resetShiftRegister();
             control |= 0x0C; // force 16 KB, fix last bank
+            updateBanks();
             return;
         }
 
@@ -140,6 +147,7 @@ public class Mapper1 implements Mapper {
             switch (reg) {
                 case 0: // Control
                     control = data;
+                    if (ppu != null) ppu.updateMirroring();
                     break;
                 case 1: // CHR bank 0
                     chrBank0 = data;
@@ -153,6 +161,7 @@ public class Mapper1 implements Mapper {
                     break;
             }
             resetShiftRegister();
+            updateBanks();
         }
     }
 
@@ -163,68 +172,20 @@ public class Mapper1 implements Mapper {
 
     @Override
     public int ppuRead(int address) {
-        address &= 0x1FFF;
-        int bank;
-        int offset;
-
-        byte[] chr = cartridge.getChr();
-        int chr4kBanks = (chr.length / 4096);
-        if (chr4kBanks <= 0) chr4kBanks = 1;
-
-        boolean chr8k = (control & 0x10) == 0;
-        int finalAddr;
-        if (chr8k) {
-            int pairCount = Math.max(1, chr4kBanks / 2);
-            int pair = (chrBank0 >> 1) % pairCount;
-            int base4k = pair * 2;
-            int off = address & 0x1FFF; // within 8KB window
-            finalAddr = base4k * 4096 + off;
-        } else {
-            if (address < 0x1000) {
-                bank = ((chrBank0 % chr4kBanks) + chr4kBanks) % chr4kBanks;
-                finalAddr = bank * 4096 + (address & 0x0FFF);
-            } else {
-                bank = ((chrBank1 % chr4kBanks) + chr4kBanks) % chr4kBanks;
-                finalAddr = bank * 4096 + ((address - 0x1000) & 0x0FFF);
-            }
-        }
+        return banks.readChr(address & 0x1FFF);
+    }
 
-        if (finalAddr >= 0 && finalAddr < chr.length) {
-            return chr[finalAddr] & 0xFF;
-        }
-        return 0;
+    @Override
+    public int ppuReadRow(int address) {
+        return cartridge.getChrCache().row(banks.chrOffset(address & 0x1FFF));
     }
 
     @Override
     public void ppuWrite(int address, int value) {
-        address &= 0x1FFF;
-        int bank;
-        int offset;
-
-        byte[] chr = cartridge.getChr();
-        int chr4kBanks = (chr.length / 4096);
-        if (chr4kBanks <= 0) chr4kBanks = 1;
-
-        boolean chr8k = (control & 0x10) == 0;
-        int finalAddr;
-        if (chr8k) {
-            int pairCount = Math.max(1, chr4kBanks / 2);
-            int pair = (chrBank0 >> 1) % pairCount;
-            int base4k = pair * 2;
-            int off = address & 0x1FFF;
-            finalAddr = base4k * 4096 + off;
-        } else {
-            if (address < 0x1000) {
-                bank = ((chrBank0 % chr4kBanks) + chr4kBanks) % chr4kBanks;
-                finalAddr = bank * 4096 + (address & 0x0FFF);
-            } else {
-                bank = ((chrBank1 % chr4kBanks) + chr4kBanks) % chr4kBanks;
-                finalAddr = bank * 4096 + ((address - 0x1000) & 0x0FFF);
-            }
-        }
-
-        if (cartridge.isChrRam() && chr.length > 0 && finalAddr >= 0 && finalAddr < chr.length) {
-            chr[finalAddr] = (byte) value;
+        if (cartridge.isChrRam()) {
+            int offset = banks.chrOffset(address & 0x1FFF);
+            cartridge.getChr()[offset] = (byte) value;
+            cartridge.chrWritten(offset);
         }
     }
 
@@ -237,6 +198,8 @@ public class Mapper1 implements Mapper {
         prgBank = 0;
         prgRamEnabled = true; // keep PRG RAM enabled
         lastWriteCycle = -1;
+        updateBanks();
+        if (ppu != null) ppu.updateMirroring();
     }
     
     public int getMirroringMode() {
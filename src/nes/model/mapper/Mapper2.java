@@ -2,6 +2,7 @@ package nes.model.mapper;
 
 import nes.model.Bus;
 import nes.model.Cartridge;
+import nes.model.PPU;
 
 /**
  * Mapper 2: UxROM
@@ -18,39 +19,41 @@ import nes.model.Cartridge;
 public class Mapper2 implements Mapper {
 
     private Cartridge cartridge;
+    private Bus bus;
     private int prgBankSelect = 0;
+    private final BankTable banks = new BankTable();
 
     @Override
     public void setCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
+        banks.mapChr(0x0000, 0x2000, cartridge.getChr(), 0);
+        updatePrgBanks();
     }
 
     @Override
     public void setBus(Bus bus) {
-        // Mapper 2 does not use IRQs, so we don't need to store the bus.
+        // Mapper 2 does not use IRQs; the bus is kept to remap PRG on bank switches.
+        this.bus = bus;
+        banks.mapCpu(bus);
     }
 
     @Override
-    public int cpuRead(int address) {
-        address &= 0xFFFF;
+    public void setPpu(PPU ppu) {
+        banks.attachPpu(ppu);
+    }
 
-        if (address >= 0x8000) {
-            if (address < 0xC000) {
-                // Switchable bank
-                int bank = prgBankSelect;
-                int offset = address - 0x8000;
-                int finalAddr = (bank * 16384) + offset;
-                return cartridge.getPrgRom()[finalAddr % cartridge.getPrgRom().length] & 0xFF;
-            } else {
-                // Fixed to last bank
-                int numBanks = cartridge.getPrgRom().length / 16384;
-                int bank = numBanks - 1;
-                int offset = address - 0xC000;
-                int finalAddr = (bank * 16384) + offset;
-                return cartridge.getPrgRom()[finalAddr % cartridge.getPrgRom().length] & 0xFF;
-            }
-        }
-        return 0;
+    /** Switchable bank at $8000, last bank fixed at $C000. */
+    private void updatePrgBanks() {
+        if (cartridge == null) return;
+        byte[] prg = cartridge.getPrgRom();
+        banks.mapPrg(0x8000, 0x4000, prg, prgBankSelect, false);
+        banks.mapPrg(0xC000, 0x4000, prg, prg.length / 16384 - 1, false);
+        if (bus != null) banks.mapCpu(bus);
+    }
+
+    @Override
+    public int cpuRead(int address) {
+        return banks.readPrg(address & 0xFFFF);
     }
 
     @Override
@@ -64,25 +67,32 @@ public class Mapper2 implements Mapper {
         if (address >= 0x8000) {
             // Any write to the PRG ROM area selects the bank
             prgBankSelect = value & 0x0F; // Lower 4 bits select the bank
+            updatePrgBanks();
         }
     }
 
     @Override
     public int ppuRead(int address) {
-        address &= 0x1FFF;
-        return cartridge.getChr()[address] & 0xFF;
+        return banks.readChr(address & 0x1FFF);
+    }
+
+    @Override
+    public int ppuReadRow(int address) {
+        return cartridge.getChrCache().row(banks.chrOffset(address & 0x1FFF));
     }
 
     @Override
     public void ppuWrite(int address, int value) {
         if (cartridge.isChrRam()) {
-            address &= 0x1FFF;
-            cartridge.getChr()[address] = (byte) value;
+            int offset = banks.chrOffset(address & 0x1FFF);
+            cartridge.getChr()[offset] = (byte) value;
+            cartridge.chrWritten(offset);
         }
     }
 
     @Override
     public void reset() {
         prgBankSelect = 0;
+        updatePrgBanks();
     }
 }
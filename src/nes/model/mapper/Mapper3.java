@@ -2,6 +2,7 @@ package nes.model.mapper;
 
 import nes.model.Bus;
 import nes.model.Cartridge;
+import nes.model.PPU;
 
 /**
  * Mapper 3: CNROM
@@ -18,27 +19,35 @@ public class Mapper3 implements Mapper {
 
     private Cartridge cartridge;
     private int chrBankSelect = 0;
+    private final BankTable banks = new BankTable();
 
     @Override
     public void setCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
+        // PRG ROM (16KB or 32KB) is fixed
+        banks.mapPrg(0x8000, 0x8000, cartridge.getPrgRom(), 0, false);
+        updateChrBanks();
     }
 
     @Override
     public void setBus(Bus bus) {
-        // Mapper 3 does not use IRQs, so we don't need to store the bus.
+        // Mapper 3 does not use IRQs and PRG ROM is fixed, so map it once.
+        banks.mapCpu(bus);
+    }
+
+    @Override
+    public void setPpu(PPU ppu) {
+        banks.attachPpu(ppu);
+    }
+
+    private void updateChrBanks() {
+        if (cartridge == null) return;
+        banks.mapChr(0x0000, 0x2000, cartridge.getChr(), chrBankSelect);
     }
 
     @Override
     public int cpuRead(int address) {
-        address &= 0xFFFF;
-        if (address >= 0x8000) {
-            // PRG ROM (16KB or 32KB)
-            int prgRomSize = cartridge.getPrgRom().length;
-            int mappedAddr = (address - 0x8000) % prgRomSize;
-            return cartridge.getPrgRom()[mappedAddr] & 0xFF;
-        }
-        return 0;
+        return banks.readPrg(address & 0xFFFF);
     }
 
     @Override
@@ -52,16 +61,18 @@ public class Mapper3 implements Mapper {
         if (address >= 0x8000) {
             // Any write to the PRG ROM area selects the CHR bank
             chrBankSelect = value & 0x03; // Lower 2 bits select the bank
+            updateChrBanks();
         }
     }
 
     @Override
     public int ppuRead(int address) {
-        address &= 0x1FFF;
-        int bank = chrBankSelect;
-        int offset = address;
-        int finalAddr = (bank * 8192) + offset;
-        return cartridge.getChr()[finalAddr % cartridge.getChr().length] & 0xFF;
+        return banks.readChr(address & 0x1FFF);
+    }
+
+    @Override
+    public int ppuReadRow(int address) {
+        return cartridge.getChrCache().row(banks.chrOffset(address & 0x1FFF));
     }
 
     @Override
@@ -72,5 +83,6 @@ public class Mapper3 implements Mapper {
     @Override
     public void reset() {
         chrBankSelect = 0;
+        updateChrBanks();
     }
 }
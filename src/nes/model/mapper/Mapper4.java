@@ -1,13 +1,16 @@
 package nes. model. mapper;
 
+import nes.model.A12Listener;
 import nes.model.Bus;
 import nes.model. Cartridge;
+import nes.model.PPU;
 import java.util.Arrays;
 
-public class Mapper4 implements Mapper {
+public class Mapper4 implements Mapper, A12Listener {
 
     private Cartridge cartridge;
     private Bus bus;
+    private PPU ppu;
 
     private int targetRegister = 0;
     private int prgBankMode = 0;
@@ -25,10 +28,8 @@ public class Mapper4 implements Mapper {
     private boolean irqReload = false;
     private boolean irqEnabled = false;
 
-    // A12 detection
-    private int lastA12 = 0;
-
     private final byte[] prgRam = new byte[8 * 1024];
+    private final BankTable banks = new BankTable();
 
     public Mapper4() {
         reset();
@@ -37,25 +38,58 @@ public class Mapper4 implements Mapper {
     @Override
     public void setCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
+        updateBanks();
     }
 
     @Override
     public void setBus(Bus bus) {
         this.bus = bus;
+        banks.mapCpu(bus);
     }
 
-    private void checkA12(int address) {
-        int a12 = (address >> 12) & 1;
+    @Override
+    public void setPpu(PPU ppu) {
+        this.ppu = ppu;
+        banks.attachPpu(ppu);
+    }
 
-        // Clock on rising edge of A12
-        if (a12 == 1 && lastA12 == 0) {
-            clockIrqCounter();
+    /** Resolve the bank registers and PRG RAM state into the bank table and the bus page table. */
+    private void updateBanks() {
+        if (cartridge == null) return;
+        byte[] prg = cartridge.getPrgRom();
+        int secondLast = prg.length / 8192 - 2;
+        if (prgBankMode == 0) {
+            banks.mapPrg(0x8000, 0x2000, prg, registers[6], false);
+            banks.mapPrg(0xC000, 0x2000, prg, secondLast, false);
+        } else {
+            banks.mapPrg(0x8000, 0x2000, prg, secondLast, false);
+            banks.mapPrg(0xC000, 0x2000, prg, registers[6], false);
         }
+        banks.mapPrg(0xA000, 0x2000, prg, registers[7], false);
+        banks.mapPrg(0xE000, 0x2000, prg, -1, false);
 
-        lastA12 = a12;
+        if (prgRamEnabled) {
+            banks.mapPrg(0x6000, 0x2000, prgRam, 0, prgRamWritesEnabled);
+        } else {
+            banks.unmapPrg(0x6000, 0x2000);
+        }
+
+        // Two 2KB banks (even/odd 1KB pairs) and four 1KB banks, swapped by the inversion bit
+        byte[] chr = cartridge.getChr();
+        int twoKb = chrInversion << 12;
+        int oneKb = twoKb ^ 0x1000;
+        banks.mapChr(twoKb, 0x0800, chr, registers[0] >> 1);
+        banks.mapChr(twoKb + 0x0800, 0x0800, chr, registers[1] >> 1);
+        for (int i = 0; i < 4; i++) {
+            banks.mapChr(oneKb + i * 0x0400, 0x0400, chr, registers[2 + i]);
+        }
+
+        if (bus != null) banks.mapCpu(bus);
     }
 
-    private void clockIrqCounter() {
+    /** The PPU tracks A12 across its pattern fetches; the counter clocks on each rising edge. */
+    @Override
+    public void a12Rose() {
         if (irqCounter == 0 || irqReload) {
             irqCounter = irqLatch;
             irqReload = false;
@@ -72,38 +106,7 @@ public class Mapper4 implements Mapper {
 
     @Override
     public int cpuRead(int address) {
-        address &= 0xFFFF;
-
-        if (address >= 0x6000 && address <= 0x7FFF) {
-            if (prgRamEnabled) return prgRam[address - 0x6000] & 0xFF;
-            return 0;
-        }
-
-        if (address >= 0x8000) {
-            int bank;
-            int offset = address & 0x1FFF;
-            int numBanks = cartridge.getPrgRom().length / 8192;
-            if (numBanks == 0) numBanks = 1;
-
-            if (prgBankMode == 0) {
-                if (address < 0xA000) bank = registers[6];
-                else if (address < 0xC000) bank = registers[7];
-                else if (address < 0xE000) bank = numBanks - 2;
-                else bank = numBanks - 1;
-            } else {
-                if (address < 0xA000) bank = numBanks - 2;
-                else if (address < 0xC000) bank = registers[7];
-                else if (address < 0xE000) bank = registers[6];
-                else bank = numBanks - 1;
-            }
-
-            bank %= numBanks;
-            int finalAddr = bank * 8192 + offset;
-            if (finalAddr < cartridge.getPrgRom().length) {
-                return cartridge. getPrgRom()[finalAddr] & 0xFF;
-            }
-        }
-        return 0;
+        return banks.readPrg(address & 0xFFFF);
     }
 
     @Override
@@ -117,9 +120,7 @@ public class Mapper4 implements Mapper {
         value &= 0xFF;
 
         if (address >= 0x6000 && address <= 0x7FFF) {
-            if (prgRamEnabled && prgRamWritesEnabled) {
-                prgRam[address - 0x6000] = (byte) value;
-            }
+            banks.writePrg(address, value);
             return;
         }
 
@@ -134,12 +135,15 @@ public class Mapper4 implements Mapper {
                 } else {
                     registers[targetRegister] = value;
                 }
+                updateBanks();
             } else if (address < 0xC000) {
                 if (even) {
                     mirroring = value & 1;
+                    if (ppu != null) ppu.updateMirroring();
                 } else {
                     prgRamEnabled = (value & 0x80) != 0;
                     prgRamWritesEnabled = (value & 0x40) == 0;
+                    updateBanks();
                 }
             } else if (address < 0xE000) {
                 if (even) {
@@ -156,83 +160,21 @@ public class Mapper4 implements Mapper {
 
     @Override
     public int ppuRead(int address) {
-        address &= 0x1FFF;
-        checkA12(address);
-        return readChr(address);
+        return banks.readChr(address & 0x1FFF);
     }
 
-    private int readChr(int address) {
-        int bank;
-        int offset;
-
-        int numChrBanks = cartridge. getChr().length / 1024;
-        if (numChrBanks == 0) numChrBanks = 1;
-
-        if (chrInversion == 0) {
-            if (address < 0x0400) { bank = registers[0] & 0xFE; offset = address & 0x03FF; }
-            else if (address < 0x0800) { bank = (registers[0] & 0xFE) | 1; offset = address & 0x03FF; }
-            else if (address < 0x0C00) { bank = registers[1] & 0xFE; offset = address & 0x03FF; }
-            else if (address < 0x1000) { bank = (registers[1] & 0xFE) | 1; offset = address & 0x03FF; }
-            else if (address < 0x1400) { bank = registers[2]; offset = address & 0x03FF; }
-            else if (address < 0x1800) { bank = registers[3]; offset = address & 0x03FF; }
-            else if (address < 0x1C00) { bank = registers[4]; offset = address & 0x03FF; }
-            else { bank = registers[5]; offset = address & 0x03FF; }
-        } else {
-            if (address < 0x0400) { bank = registers[2]; offset = address & 0x03FF; }
-            else if (address < 0x0800) { bank = registers[3]; offset = address & 0x03FF; }
-            else if (address < 0x0C00) { bank = registers[4]; offset = address & 0x03FF; }
-            else if (address < 0x1000) { bank = registers[5]; offset = address & 0x03FF; }
-            else if (address < 0x1400) { bank = registers[0] & 0xFE; offset = address & 0x03FF; }
-            else if (address < 0x1800) { bank = (registers[0] & 0xFE) | 1; offset = address & 0x03FF; }
-            else if (address < 0x1C00) { bank = registers[1] & 0xFE; offset = address & 0x03FF; }
-            else { bank = (registers[1] & 0xFE) | 1; offset = address & 0x03FF; }
-        }
-
-        bank %= numChrBanks;
-        int finalAddr = bank * 1024 + offset;
-        byte[] chr = cartridge.getChr();
-        if (chr. length > 0) {
-            return chr[finalAddr] & 0xFF;
-        }
-        return 0;
+    @Override
+    public int ppuReadRow(int address) {
+        return cartridge.getChrCache().row(banks.chrOffset(address & 0x1FFF));
     }
 
     @Override
     public void ppuWrite(int address, int value) {
         address &= 0x1FFF;
-        checkA12(address);
-
-        int bank;
-        int offset;
-
-        int numChrBanks = cartridge.getChr().length / 1024;
-        if (numChrBanks == 0) numChrBanks = 1;
-
-        if (chrInversion == 0) {
-            if (address < 0x0400) { bank = registers[0] & 0xFE; offset = address & 0x03FF; }
-            else if (address < 0x0800) { bank = (registers[0] & 0xFE) | 1; offset = address & 0x03FF; }
-            else if (address < 0x0C00) { bank = registers[1] & 0xFE; offset = address & 0x03FF; }
-            else if (address < 0x1000) { bank = (registers[1] & 0xFE) | 1; offset = address & 0x03FF; }
-            else if (address < 0x1400) { bank = registers[2]; offset = address & 0x03FF; }
-            else if (address < 0x1800) { bank = registers[3]; offset = address & 0x03FF; }
-            else if (address < 0x1C00) { bank = registers[4]; offset = address & 0x03FF; }
-            else { bank = registers[5]; offset = address & 0x03FF; }
-        } else {
-            if (address < 0x0400) { bank = registers[2]; offset = address & 0x03FF; }
-            else if (address < 0x0800) { bank = registers[3]; offset = address & 0x03FF; }
-            else if (address < 0x0C00) { bank = registers[4]; offset = address & 0x03FF; }
-            else if (address < 0x1000) { bank = registers[5]; offset = address & 0x03FF; }
-            else if (address < 0x1400) { bank = registers[0] & 0xFE; offset = address & 0x03FF; }
-            else if (address < 0x1800) { bank = (registers[0] & 0xFE) | 1; offset = address & 0x03FF; }
-            else if (address < 0x1C00) { bank = registers[1] & 0xFE; offset = address & 0x03FF; }
-            else { bank = (registers[1] & 0xFE) | 1; offset = address & 0x03FF; }
-        }
-
-        bank %= numChrBanks;
-        int finalAddr = bank * 1024 + offset;
-        byte[] chr = cartridge.getChr();
-        if (cartridge.isChrRam() && chr.length > 0) {
-            chr[finalAddr] = (byte) value;
+        if (cartridge.isChrRam()) {
+            int offset = banks.chrOffset(address);
+            cartridge.getChr()[offset] = (byte) value;
+            cartridge.chrWritten(offset);
         }
     }
 
@@ -242,14 +184,20 @@ public class Mapper4 implements Mapper {
         prgBankMode = 0;
         chrInversion = 0;
         mirroring = 0;
+        if (ppu != null) ppu.updateMirroring();
         prgRamEnabled = true;
         prgRamWritesEnabled = true;
         irqCounter = 0;
         irqLatch = 0;
         irqReload = false;
         irqEnabled = false;
-        lastA12 = 0;
         Arrays.fill(registers, 0);
+        updateBanks();
+    }
+
+    @Override
+    public boolean isScanlineIrqArmed() {
+        return irqEnabled;
     }
 
     public int getMirroringMode() {
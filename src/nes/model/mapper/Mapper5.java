@@ -2,6 +2,8 @@ package nes.model. mapper;
 
 import nes.model.Bus;
 import nes.model. Cartridge;
+import nes.model.PPU;
+import nes.model.PpuBusListener;
 
 import java.util.Arrays;
 
@@ -9,10 +11,11 @@ import java.util.Arrays;
  * Mapper 5: MMC5 (Nintendo MMC5)
  * Used by Castlevania III, Just Breed, Romance of Three Kingdoms II, etc.
  */
-public class Mapper5 implements Mapper {
+public class Mapper5 implements Mapper, PpuBusListener {
 
     private Cartridge cartridge;
     private Bus bus;
+    private PPU ppu;
     private byte[] ppuVram;
 
     // PRG Banking
@@ -28,6 +31,11 @@ public class Mapper5 implements Mapper {
     private int lastChrWrite = 0; // 0 = A, 1 = B
     private int chrUpperBits = 0; // $5130
 
+    // PRG and CHR set A resolved into one table, CHR set B into a second
+    private final BankTable banks = new BankTable();
+    private final BankTable banksB = new BankTable();
+    private BankTable shownChr; // the set in the PPU's pattern page table, null while it reads through ppuRead
+
     // Internal RAM
     private final byte[] prgRam = new byte[64 * 1024];
     private final byte[] exRam = new byte[1024];
@@ -38,6 +46,13 @@ public class Mapper5 implements Mapper {
     private int fillModeTile = 0;
     private int fillModeAttr = 0;
 
+    // The four nametable slots as last handed to the PPU's page table
+    private final byte[][] ntRead = new byte[4][];
+    private final byte[][] ntWrite = new byte[4][];
+    private final int[] ntOffset = new int[4];
+    private final byte[] fillPage = new byte[1024];
+    private static final byte[] BLANK_PAGE = new byte[1024]; // ExRAM while not readable as a nametable
+
     // IRQ
     private int irqScanline = 0;
     private boolean irqEnabled = false;
@@ -63,15 +78,67 @@ public class Mapper5 implements Mapper {
     @Override
     public void setCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
+        updatePrgBanks();
+        updateChrBanks();
     }
 
     @Override
     public void setBus(Bus bus) {
         this.bus = bus;
+        banks.mapCpu(bus);
+    }
+
+    @Override
+    public void setPpu(PPU ppu) {
+        this.ppu = ppu;
+        this.ppuVram = ppu.getNametableRam();
+        updateNametables();
+        shownChr = null;
+        updatePatternPages();
     }
 
-    public void setPpuVram(byte[] vram) {
-        this.ppuVram = vram;
+    /**
+     * Resolve $5104-$5107 into the nametable page table: CIRAM page 0/1, ExRAM
+     * (blank and/or write-protected outside ExRAM modes 0/1), or the fill page.
+     * In ExRAM mode 1 attribute bytes are synthesized per tile, so the PPU routes
+     * nametable reads back through {@link #ppuRead}.
+     */
+    private void updateNametables() {
+        Arrays.fill(fillPage, 0, 0x3C0, (byte) fillModeTile);
+        Arrays.fill(fillPage, 0x3C0, 0x400, (byte) (fillModeAttr * 0x55));
+        for (int slot = 0; slot < 4; slot++) {
+            byte[] read;
+            byte[] write;
+            int offset = 0;
+            switch ((nametableMapping >> (slot * 2)) & 0x03) {
+                case 0:
+                case 1:
+                    read = write = ppuVram;
+                    offset = ((nametableMapping >> (slot * 2)) & 0x01) * 0x400;
+                    if (ppuVram == null) {
+                        read = BLANK_PAGE;
+                        offset = 0;
+                    }
+                    break;
+                case 2:
+                    read = exRamMode <= 1 ? exRam : BLANK_PAGE;
+                    write = exRamMode != 3 ? exRam : null;
+                    break;
+                default:
+                    read = fillPage;
+                    write = null;
+                    break;
+            }
+            ntRead[slot] = read;
+            ntWrite[slot] = write;
+            ntOffset[slot] = offset;
+            if (ppu != null) {
+                ppu.mapNametable(slot, read, write, offset);
+            }
+        }
+        if (ppu != null) {
+            ppu.setMapperNametableReads(exRamMode == 1);
+        }
     }
 
     @Override
@@ -104,6 +171,104 @@ public class Mapper5 implements Mapper {
         Arrays.fill(chrBanksB, 0);
         Arrays.fill(prgRam, (byte) 0);
         Arrays.fill(exRam, (byte) 0);
+        updatePrgBanks();
+        updateChrBanks();
+        updateNametables();
+    }
+
+    /**
+     * Resolve $5100-$5117 into the bank table and the bus page table. Writes
+     * are mapped only where cpuWrite would store into the same PRG RAM bank;
+     * everything else keeps going through cpuWrite.
+     */
+    private void updatePrgBanks() {
+        if (cartridge == null) return;
+        byte[] prg = cartridge.getPrgRom();
+        boolean ramWritable = prgRamProtect1 == 0x02 && prgRamProtect2 == 0x01;
+
+        banks.mapPrg(0x6000, 0x2000, prgRam, prgBanks[0] & 0x7F, ramWritable);
+
+        switch (prgMode) {
+            case 0: // 32KB mode
+                banks.mapPrg(0x8000, 0x8000, prg, (prgBanks[4] & 0x7C) >> 2, false);
+                break;
+            case 1: // 16KB + 16KB mode
+                banks.mapPrg(0x8000, 0x4000, prg, (prgBanks[2] & 0x7E) >> 1, false);
+                banks.mapPrg(0xC000, 0x4000, prg, (prgBanks[4] & 0x7E) >> 1, false);
+                break;
+            case 2: // 16KB + 8KB + 8KB mode
+                banks.mapPrg(0x8000, 0x4000, prg, (prgBanks[2] & 0x7E) >> 1, false);
+                banks.mapPrg(0xC000, 0x2000, prg, prgBanks[3] & 0x7F, false);
+                banks.mapPrg(0xE000, 0x2000, prg, prgBanks[4] & 0x7F, false);
+                break;
+            case 3: // 8KB x 4 mode
+            default:
+                for (int slot = 0; slot < 3; slot++) {
+                    int reg = prgBanks[slot + 1];
+                    int address = 0x8000 + slot * 0x2000;
+                    if ((reg & 0x80) == 0) {
+                        banks.mapPrg(address, 0x2000, prgRam, reg & 0x07, ramWritable);
+                    } else {
+                        banks.mapPrg(address, 0x2000, prg, reg & 0x7F, false);
+                    }
+                }
+                banks.mapPrg(0xE000, 0x2000, prg, prgBanks[4] & 0x7F, false);
+                break;
+        }
+
+        if (bus != null) banks.mapCpu(bus);
+    }
+
+    /** Resolve $5101 and $5120-$512B into the set A and set B CHR tables. */
+    private void updateChrBanks() {
+        if (cartridge == null) return;
+        byte[] chr = cartridge.getChr();
+        switch (chrMode) {
+            case 0: // 8KB mode
+                banks.mapChr(0x0000, 0x2000, chr, chrBanksA[7]);
+                banksB.mapChr(0x0000, 0x2000, chr, chrBanksB[3]);
+                break;
+            case 1: // 4KB mode
+                banks.mapChr(0x0000, 0x1000, chr, chrBanksA[3]);
+                banks.mapChr(0x1000, 0x1000, chr, chrBanksA[7]);
+                banksB.mapChr(0x0000, 0x1000, chr, chrBanksB[3]);
+                banksB.mapChr(0x1000, 0x1000, chr, chrBanksB[3]);
+                break;
+            case 2: // 2KB mode
+                for (int i = 0; i < 4; i++) {
+                    banks.mapChr(i * 0x0800, 0x0800, chr, chrBanksA[i * 2 + 1]);
+                    banksB.mapChr(i * 0x0800, 0x0800, chr, chrBanksB[i]);
+                }
+                break;
+            case 3: // 1KB mode
+            default:
+                for (int i = 0; i < 8; i++) {
+                    banks.mapChr(i * 0x0400, 0x0400, chr, chrBanksA[i]);
+                    banksB.mapChr(i * 0x0400, 0x0400, chr, chrBanksB[i & 0x03]);
+                }
+                break;
+        }
+        shownChr = null;
+        updatePatternPages();
+    }
+
+    /**
+     * Point the PPU's pattern page table at the CHR set the next fetch uses.
+     * ExRAM mode 1 picks a bank per background tile, so then the PPU reads
+     * patterns through {@link #ppuRead} instead.
+     */
+    private void updatePatternPages() {
+        if (ppu == null) return;
+        if (exRamMode == 1) {
+            ppu.setMapperPatternReads(true);
+            shownChr = null;
+            return;
+        }
+        BankTable set = chrBanks();
+        if (set != shownChr) {
+            set.showChr(ppu);
+            shownChr = set;
+        }
     }
 
     // ==================== CPU Memory Access ====================
@@ -123,17 +288,7 @@ public class Mapper5 implements Mapper {
             return 0xFF;
         }
 
-        if (address >= 0x6000 && address <= 0x7FFF) {
-            int bank = prgBanks[0] & 0x7F;
-            int offset = (bank * 0x2000) + (address & 0x1FFF);
-            return prgRam[offset % prgRam.length] & 0xFF;
-        }
-
-        if (address >= 0x8000) {
-            return readPrg(address);
-        }
-
-        return 0;
+        return banks.readPrg(address);
     }
 
     private int readRegister(int address) {
@@ -154,80 +309,6 @@ public class Mapper5 implements Mapper {
         }
     }
 
-    private int readPrg(int address) {
-        byte[] prg = cartridge.getPrgRom();
-        if (prg == null || prg.length == 0) return 0;
-
-        int bank;
-        int offset;
-
-        switch (prgMode) {
-            case 0: // 32KB mode
-                bank = (prgBanks[4] & 0x7C) >> 2;
-                offset = address & 0x7FFF;
-                return prg[(bank * 0x8000 + offset) % prg.length] & 0xFF;
-
-            case 1: // 16KB + 16KB mode
-                if (address < 0xC000) {
-                    bank = (prgBanks[2] & 0x7E) >> 1;
-                    offset = address & 0x3FFF;
-                } else {
-                    bank = (prgBanks[4] & 0x7E) >> 1;
-                    offset = address & 0x3FFF;
-                }
-                return prg[(bank * 0x4000 + offset) % prg.length] & 0xFF;
-
-            case 2: // 16KB + 8KB + 8KB mode
-                if (address < 0xC000) {
-                    bank = (prgBanks[2] & 0x7E) >> 1;
-                    offset = address & 0x3FFF;
-                    return prg[(bank * 0x4000 + offset) % prg.length] & 0xFF;
-                } else if (address < 0xE000) {
-                    bank = prgBanks[3] & 0x7F;
-                    offset = address & 0x1FFF;
-                } else {
-                    bank = prgBanks[4] & 0x7F;
-                    offset = address & 0x1FFF;
-                }
-                return prg[(bank * 0x2000 + offset) % prg.length] & 0xFF;
-
-            case 3: // 8KB x 4 mode
-            default:
-                if (address < 0xA000) {
-                    int reg = prgBanks[1];
-                    if ((reg & 0x80) == 0) {
-                        bank = reg & 0x07;
-                        offset = address & 0x1FFF;
-                        return prgRam[(bank * 0x2000 + offset) % prgRam.length] & 0xFF;
-                    }
-                    bank = reg & 0x7F;
-                    offset = address & 0x1FFF;
-                } else if (address < 0xC000) {
-                    int reg = prgBanks[2];
-                    if ((reg & 0x80) == 0) {
-                        bank = reg & 0x07;
-                        offset = address & 0x1FFF;
-                        return prgRam[(bank * 0x2000 + offset) % prgRam.length] & 0xFF;
-                    }
-                    bank = reg & 0x7F;
-                    offset = address & 0x1FFF;
-                } else if (address < 0xE000) {
-                    int reg = prgBanks[3];
-                    if ((reg & 0x80) == 0) {
-                        bank = reg & 0x07;
-                        offset = address & 0x1FFF;
-                        return prgRam[(bank * 0x2000 + offset) % prgRam.length] & 0xFF;
-                    }
-                    bank = reg & 0x7F;
-                    offset = address & 0x1FFF;
-                } else {
-                    bank = prgBanks[4] & 0x7F;
-                    offset = address & 0x1FFF;
-                }
-                return prg[(bank * 0x2000 + offset) % prg.length] & 0xFF;
-        }
-    }
-
     @Override
     public void cpuWrite(int address, int value) {
         cpuWrite(address, value, 0);
@@ -240,6 +321,12 @@ public class Mapper5 implements Mapper {
 
         if (address >= 0x5000 && address < 0x5C00) {
             writeRegister(address, value);
+            if (address <= 0x5117) {
+                updatePrgBanks();
+            }
+            if (address == 0x5101 || (address >= 0x5120 && address <= 0x512B)) {
+                updateChrBanks();
+            }
             return;
         }
 
@@ -270,10 +357,10 @@ public class Mapper5 implements Mapper {
             case 0x5101: chrMode = value & 0x03; break;
             case 0x5102: prgRamProtect1 = value & 0x03; break;
             case 0x5103: prgRamProtect2 = value & 0x03; break;
-            case 0x5104: exRamMode = value & 0x03; break;
-            case 0x5105: nametableMapping = value; break;
-            case 0x5106: fillModeTile = value; break;
-            case 0x5107: fillModeAttr = value & 0x03; break;
+            case 0x5104: exRamMode = value & 0x03; updateNametables(); shownChr = null; updatePatternPages(); break;
+            case 0x5105: nametableMapping = value; updateNametables(); break;
+            case 0x5106: fillModeTile = value; updateNametables(); break;
+            case 0x5107: fillModeAttr = value & 0x03; updateNametables(); break;
 
             case 0x5113: prgBanks[0] = value & 0x07; break;
             case 0x5114: prgBanks[1] = value; break;
@@ -323,6 +410,8 @@ public class Mapper5 implements Mapper {
             int bank = reg & 0x07;
             int offset = (bank * 0x2000) + (address & 0x1FFF);
             prgRam[offset % prgRam. length] = (byte) value;
+            // Outside mode 3 this RAM is not mapped writable, so tell the bus.
+            if (bus != null) bus.invalidateDecoded(prgRam, offset % prgRam.length);
         }
     }
 
@@ -370,8 +459,6 @@ public class Mapper5 implements Mapper {
         byte[] chr = cartridge.getChr();
         if (chr == null || chr.length == 0) return 0;
 
-        int finalAddr;
-
         // EXRAM mode 1: Extended attribute mode for background fetches ONLY
         // This provides per-tile CHR banking from EXRAM
         if (exRamMode == 1 && ! inSpriteFetch) {
@@ -382,69 +469,21 @@ public class Mapper5 implements Mapper {
             int fullBank = exRamChrBank | (chrUpperBits << 6);
 
             // 4KB bank addressing - use offset within 4KB
-            finalAddr = (fullBank * 0x1000) + (address & 0x0FFF);
-        } else {
-            // Normal banking mode (sprites, or when exRamMode != 1)
-            finalAddr = calculateChrAddress(address);
+            int finalAddr = (fullBank * 0x1000) + (address & 0x0FFF);
+            return chr[finalAddr % chr.length] & 0xFF;
         }
-
-        return chr[finalAddr % chr.length] & 0xFF;
+        // Normal banking mode (sprites, or when exRamMode != 1)
+        return chrBanks().readChr(address);
     }
 
-    /**
-     * Calculate CHR address using normal bank registers.
-     */
-    private int calculateChrAddress(int address) {
-        // Determine which bank set to use
-        boolean useSetA;
+    /** CHR bank set for a normal (non-ExRAM) pattern fetch. */
+    private BankTable chrBanks() {
         if (spriteSize8x16) {
             // 8x16 sprites:  Set A for sprites, Set B for backgrounds
-            useSetA = inSpriteFetch;
-        } else {
-            // 8x8 sprites: Use whichever set was last written to
-            useSetA = (lastChrWrite == 0);
-        }
-
-        int region = (address >> 10) & 0x07;
-
-        switch (chrMode) {
-            case 0: { // 8KB mode
-                int bank = useSetA ? chrBanksA[7] : chrBanksB[3];
-                return (bank * 0x2000) + (address & 0x1FFF);
-            }
-
-            case 1: { // 4KB mode
-                int bank;
-                if (address < 0x1000) {
-                    bank = useSetA ? chrBanksA[3] : chrBanksB[3];
-                } else {
-                    bank = useSetA ? chrBanksA[7] :  chrBanksB[3];
-                }
-                return (bank * 0x1000) + (address & 0x0FFF);
-            }
-
-            case 2: { // 2KB mode
-                int regIndex = region >> 1; // 0-3
-                int bank;
-                if (useSetA) {
-                    bank = chrBanksA[regIndex * 2 + 1];
-                } else {
-                    bank = chrBanksB[regIndex & 1 | ((regIndex >> 1) << 1)];
-                }
-                return (bank * 0x0800) + (address & 0x07FF);
-            }
-
-            case 3: // 1KB mode
-            default:  {
-                int bank;
-                if (useSetA) {
-                    bank = chrBanksA[region];
-                } else {
-                    bank = chrBanksB[region & 0x03];
-                }
-                return (bank * 0x0400) + (address & 0x03FF);
-            }
+            return inSpriteFetch ? banks : banksB;
         }
+        // 8x8 sprites: Use whichever set was last written to
+        return lastChrWrite == 0 ? banks : banksB;
     }
 
     private void writeChr(int address, int value) {
@@ -453,18 +492,16 @@ public class Mapper5 implements Mapper {
         byte[] chr = cartridge.getChr();
         if (chr == null || chr.length == 0) return;
 
-        int finalAddr = calculateChrAddress(address);
-        chr[finalAddr % chr. length] = (byte) value;
+        int offset = chrBanks().chrOffset(address);
+        chr[offset] = (byte) value;
+        cartridge.chrWritten(offset);
     }
 
     private int readNametable(int address) {
-        int ntAddr = address & 0x0FFF;
-        int ntIndex = (ntAddr >> 10) & 0x03;
-        int offset = ntAddr & 0x3FF;
+        int slot = (address >> 10) & 0x03;
+        int offset = address & 0x3FF;
         boolean isAttributeFetch = (offset >= 0x3C0);
 
-        int mode = (nametableMapping >> (ntIndex * 2)) & 0x03;
-
         // EXRAM Mode 1: Attribute table reads return per-tile palette from EXRAM
         // This applies regardless of which nametable source is used
         if (exRamMode == 1 && isAttributeFetch && ! inSpriteFetch) {
@@ -473,62 +510,47 @@ public class Mapper5 implements Mapper {
             // Return this attribute in all 4 positions of the attribute byte
             return attr | (attr << 2) | (attr << 4) | (attr << 6);
         }
-
-        switch (mode) {
-            case 0:
-                return ppuVram != null ? ppuVram[offset] & 0xFF : 0;
-            case 1:
-                return ppuVram != null ? ppuVram[0x400 + offset] & 0xFF : 0;
-            case 2:
-                if (exRamMode == 0 || exRamMode == 1) {
-                    return exRam[offset] & 0xFF;
-                }
-                return 0;
-            case 3:
-                if (offset < 0x3C0) {
-                    return fillModeTile & 0xFF;
-                } else {
-                    int attr = fillModeAttr & 0x03;
-                    return attr | (attr << 2) | (attr << 4) | (attr << 6);
-                }
-            default:
-                return 0;
-        }
+        return ntRead[slot][ntOffset[slot] | offset] & 0xFF;
     }
 
     private void writeNametable(int address, int value) {
-        int ntAddr = address & 0x0FFF;
-        int ntIndex = (ntAddr >> 10) & 0x03;
-        int offset = ntAddr & 0x3FF;
-
-        int mode = (nametableMapping >> (ntIndex * 2)) & 0x03;
-
-        switch (mode) {
-            case 0:
-                if (ppuVram != null) ppuVram[offset] = (byte) value;
-                break;
-            case 1:
-                if (ppuVram != null) ppuVram[0x400 + offset] = (byte) value;
-                break;
-            case 2:
-                if (exRamMode != 3) exRam[offset] = (byte) value;
-                break;
-            case 3:
-                break;
+        int slot = (address >> 10) & 0x03;
+        byte[] page = ntWrite[slot];
+        if (page != null) {
+            page[ntOffset[slot] | (address & 0x3FF)] = (byte) value;
         }
     }
 
     // ==================== PPU Callbacks ====================
 
-    public void setFetchingSprites(boolean fetching) {
-        this.inSpriteFetch = fetching;
+    @Override
+    public void scanlineStarted(int scanline) {
+        inSpriteFetch = false;
+        updatePatternPages();
+    }
+
+    @Override
+    public void spriteFetchStarted(int scanline) {
+        inSpriteFetch = true;
+        updatePatternPages();
+    }
+
+    @Override
+    public void spriteFetchEnded(int scanline) {
+        inSpriteFetch = false;
+        updatePatternPages();
     }
 
-    public void setSpriteSize8x16(boolean is8x16) {
+    @Override
+    public void spriteSizeChanged(boolean is8x16) {
         this.spriteSize8x16 = is8x16;
+        updatePatternPages();
     }
 
-    public void onScanlineEnd(int scanline) {
+    @Override
+    public void scanlineEnded(int scanline) {
+        inSpriteFetch = false;
+        updatePatternPages();
         if (scanline >= 0 && scanline < 240) {
             if (! inFrame) {
                 inFrame = true;
@@ -544,7 +566,8 @@ public class Mapper5 implements Mapper {
         }
     }
 
-    public void startVBlank() {
+    @Override
+    public void vblankStarted() {
         inFrame = false;
     }
 
@@ -558,7 +581,8 @@ public class Mapper5 implements Mapper {
      * In EXRAM mode 1, we capture the EXRAM byte at the same tile position
      * for use in extended CHR banking and per-tile palette.
      */
-    public void notifyNametableFetch(int address) {
+    @Override
+    public void nametableFetch(int address) {
         if (exRamMode == 1) {
             int offset = address & 0x3FF;
             if (offset < 0x3C0) {
@@ -567,6 +591,11 @@ public class Mapper5 implements Mapper {
         }
     }
 
+    @Override
+    public boolean isScanlineIrqArmed() {
+        return irqEnabled;
+    }
+
     public int getMirroringMode() {
         return 2;
     }
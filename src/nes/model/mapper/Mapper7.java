@@ -2,6 +2,7 @@ package nes.model.mapper;
 
 import nes.model.Bus;
 import nes.model.Cartridge;
+import nes.model.PPU;
 
 /**
  * Mapper 7: AxROM
@@ -16,9 +17,12 @@ import nes.model.Cartridge;
 public class Mapper7 implements Mapper {
 
     private Cartridge cartridge;
+    private Bus bus;
+    private PPU ppu;
     private int prgBankSelect = 0;
     private int mirroringSelect = 0;
     private int prgBankMask = 0x07; // Will be calculated based on ROM size
+    private final BankTable banks = new BankTable();
 
     @Override
     public void setCartridge(Cartridge cartridge) {
@@ -33,26 +37,32 @@ public class Mapper7 implements Mapper {
             prgBankMask <<= 1;
         }
         prgBankMask--; // Convert to mask (e.g., 8 banks -> mask of 0x07)
+        banks.mapChr(0x0000, 0x2000, cartridge.getChr(), 0);
+        updatePrgBanks();
     }
 
     @Override
     public void setBus(Bus bus) {
-        // Mapper 7 does not use IRQs
+        // Mapper 7 does not use IRQs; the bus is kept to remap PRG on bank switches.
+        this.bus = bus;
+        banks.mapCpu(bus);
     }
 
     @Override
-    public int cpuRead(int address) {
-        address &= 0xFFFF;
-        if (address >= 0x8000) {
-            byte[] prg = cartridge. getPrgRom();
-            int numBanks = prg. length / 0x8000;
-            if (numBanks == 0) numBanks = 1;
+    public void setPpu(PPU ppu) {
+        this.ppu = ppu;
+        banks.attachPpu(ppu);
+    }
 
-            int bank = prgBankSelect % numBanks;
-            int offset = address & 0x7FFF;
-            return prg[(bank * 0x8000) + offset] & 0xFF;
-        }
-        return 0;
+    private void updatePrgBanks() {
+        if (cartridge == null) return;
+        banks.mapPrg(0x8000, 0x8000, cartridge.getPrgRom(), prgBankSelect, false);
+        if (bus != null) banks.mapCpu(bus);
+    }
+
+    @Override
+    public int cpuRead(int address) {
+        return banks.readPrg(address & 0xFFFF);
     }
 
     @Override
@@ -69,34 +79,36 @@ public class Mapper7 implements Mapper {
             // Update PRG and Mirroring
             prgBankSelect = resolvedValue & prgBankMask;
             mirroringSelect = (resolvedValue >> 4) & 1;
+            updatePrgBanks();
+            if (ppu != null) ppu.updateMirroring();
 
         }
     }
 
     @Override
     public int ppuRead(int address) {
-        address &= 0x1FFF;
-        byte[] chr = cartridge.getChr();
-        if (chr != null && address < chr.length) {
-            return chr[address] & 0xFF;
-        }
-        return 0;
+        return banks.readChr(address & 0x1FFF);
+    }
+
+    @Override
+    public int ppuReadRow(int address) {
+        return cartridge.getChrCache().row(banks.chrOffset(address & 0x1FFF));
     }
 
     @Override
     public void ppuWrite(int address, int value) {
         // CHR-RAM is always writable on Mapper 7
-        address &= 0x1FFF;
-        byte[] chr = cartridge.getChr();
-        if (chr != null && address < chr.length) {
-            chr[address] = (byte) value;
-        }
+        int offset = banks.chrOffset(address & 0x1FFF);
+        cartridge.getChr()[offset] = (byte) value;
+        cartridge.chrWritten(offset);
     }
 
     @Override
     public void reset() {
         prgBankSelect = 0;
         mirroringSelect = 0;
+        updatePrgBanks();
+        if (ppu != null) ppu.updateMirroring();
     }
 
     public int getMirroringMode() {
@@ -13,37 +13,8 @@ public final class MapperSelfTest {
      */
     private static Cartridge makeRom(int prgBanks16k, int chrBanks8k, boolean verticalMirroring, int mapperId,
                                      byte[] prgFill, int vectorLo, int vectorHi) {
-        int prgSize = prgBanks16k * 16 * 1024;
-        int chrSize = chrBanks8k * 8 * 1024;
-        byte[] header = new byte[16];
-        header[0] = 'N'; header[1] = 'E'; header[2] = 'S'; header[3] = 0x1A;
-        header[4] = (byte) prgBanks16k; // PRG banks
-        header[5] = (byte) chrBanks8k; // CHR banks
-        int flags6 = 0;
-        if (verticalMirroring) flags6 |= 0x01;
-        flags6 |= ((mapperId & 0x0F) << 4);
-        header[6] = (byte) flags6;
-        header[7] = (byte) ((mapperId & 0xF0));
-        byte[] prg = new byte[prgSize];
-        byte[] chr = new byte[chrSize > 0 ? chrSize : 8 * 1024];
-
-        // Fill PRG banks with recognizable patterns
-        for (int b = 0; b < prgBanks16k; b++) {
-            int base = b * 16 * 1024;
-            byte fill = prgFill != null && b < prgFill.length ? prgFill[b] : (byte) (0x10 * (b + 1));
-            for (int i = 0; i < 16 * 1024; i++) prg[base + i] = fill;
-        }
-        // Place a reset vector at the end of last bank ($FFFC-$FFFD)
-        if (prgSize >= 0x8000) {
-            prg[prgSize - 4] = (byte) vectorLo; // $FFFC
-            prg[prgSize - 3] = (byte) vectorHi; // $FFFD
-        }
-
-        byte[] rom = new byte[16 + prg.length + (chrBanks8k > 0 ? chr.length : 0)];
-        System.arraycopy(header, 0, rom, 0, 16);
-        System.arraycopy(prg, 0, rom, 16, prg.length);
-        if (chrBanks8k > 0) System.arraycopy(chr, 0, rom, 16 + prg.length, chr.length);
-        return Cartridge.loadFromBytes(rom, "MMC1_TEST");
+        return Cartridge.loadFromBytes(TestRoms.image(prgBanks16k, chrBanks8k, verticalMirroring, mapperId,
+                prgFill, vectorLo, vectorHi), "MMC1_TEST");
     }
 
     /** Basic MMC1 sanity checks: reset mapping, PRG bank switching, and initial mirroring. */
@@ -112,4 +83,146 @@ public final class MapperSelfTest {
 
         return true;
     }
+
+    /**
+     * Decoded CHR rows: CHR ROM caches are shared between cartridges built from
+     * the same image, CHR RAM writes show up in ppuReadRow immediately, and every
+     * row matches the two bytes ppuRead returns.
+     */
+    public static boolean runChrCache() {
+        Cartridge romA = makeRom(2, 1, true, 0, null, 0x00, 0x80);
+        Cartridge romB = makeRom(2, 1, true, 0, null, 0x00, 0x80);
+        if (romA.getChrCache() != romB.getChrCache()) return false;
+
+        Cartridge cart = makeRom(2, 0, true, 2, null, 0x00, 0x80); // UxROM with CHR RAM
+        if (romA.getChrCache() == cart.getChrCache()) return false;
+        Mapper mapper = cart.getMapper();
+        int before = mapper.ppuReadRow(0x1230);
+        mapper.ppuWrite(0x1233, 0xA5);
+        mapper.ppuWrite(0x123B, 0x3C);
+        int after = mapper.ppuReadRow(0x1233);
+        if (after == before || after != ChrCache.pack(0xA5, 0x3C)) return false;
+        if (ChrCache.pixel(after, 0) != 1 || ChrCache.pixel(after, 2) != 3 || ChrCache.pixel(after, 1) != 0) return false;
+        for (int address = 0; address < 0x2000; address += 16) {
+            for (int fineY = 0; fineY < 8; fineY++) {
+                int a = address + fineY;
+                if (mapper.ppuReadRow(a) != ChrCache.pack(mapper.ppuRead(a), mapper.ppuRead(a + 8))) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Nametable page table: an MMC1 mirroring write remaps the PPU's nametables,
+     * and MMC5 ExRAM and fill-mode pages read and write through the same table.
+     */
+    public static boolean runNametablePaging() {
+        Cartridge cart = makeRom(2, 1, true, 1, null, 0x00, 0x80);
+        PPU ppu = new PPU();
+        Bus bus = new Bus(new CPU(), ppu, new APU(), new RAM(2 * 1024));
+        bus.setCartridge(cart); ppu.setCartridge(cart); cart.reset(); ppu.reset();
+        writeVram(ppu, 0x2000, 0x5A);
+        if (ppu.getVramByteForAddr(0x2C00) != 0x5A) return false; // single screen A after reset
+        long cyc = 0;
+        for (int i = 0; i < 5; i++) {
+            cart.getMapper().cpuWrite(0x8000, (0x03 >> i) & 1, cyc); // control: horizontal
+            cyc += 2;
+        }
+        if (ppu.getVramByteForAddr(0x2400) != 0x5A || ppu.getVramByteForAddr(0x2800) == 0x5A) return false;
+
+        Cartridge mmc5 = makeRom(2, 1, true, 5, null, 0x00, 0x80);
+        ppu = new PPU();
+        bus = new Bus(new CPU(), ppu, new APU(), new RAM(2 * 1024));
+        bus.setCartridge(mmc5); ppu.setCartridge(mmc5); mmc5.reset(); ppu.reset();
+        Mapper m5 = mmc5.getMapper();
+        m5.cpuWrite(0x5105, 0xE4); // slots: CIRAM A, CIRAM B, ExRAM, fill
+        m5.cpuWrite(0x5106, 0x42);
+        m5.cpuWrite(0x5107, 0x02);
+        writeVram(ppu, 0x2405, 0x11);
+        writeVram(ppu, 0x2805, 0x22);
+        writeVram(ppu, 0x2C05, 0x33);
+        if (ppu.getVramByteForAddr(0x2005) != 0 || ppu.getVramByteForAddr(0x2405) != 0x11) return false;
+        if (ppu.getVramByteForAddr(0x2805) != 0x22) return false;
+        if (ppu.getVramByteForAddr(0x2C05) != 0x42 || ppu.getVramByteForAddr(0x2FC0) != 0xAA) return false;
+        m5.cpuWrite(0x5104, 0x02); // ExRAM as CPU RAM: blank to the PPU
+        if (ppu.getVramByteForAddr(0x2805) != 0 || (m5.cpuRead(0x5C05) & 0xFF) != 0x22) return false;
+        return true;
+    }
+
+    /**
+     * Bank tables: MMC3 PRG and CHR selects land where the registers say,
+     * wrap modulo the image, follow both mode bits, and the bus page table
+     * agrees with cpuRead after every switch.
+     */
+    public static boolean runBankTables() {
+        Cartridge cart = makeRom(4, 0, true, 4, null, 0x00, 0x80); // 8x8KB PRG, 8KB CHR RAM
+        Bus bus = new Bus(new CPU(), new PPU(), new APU(), new RAM(2 * 1024));
+        bus.setCartridge(cart); cart.reset();
+        Mapper m4 = cart.getMapper();
+
+        m4.cpuWrite(0x8000, 0x06); m4.cpuWrite(0x8001, 5);
+        if (!prgMatches(bus, m4, 0x30, 0x10, 0x40, 0x40)) return false;
+        m4.cpuWrite(0x8001, 13); // wraps to bank 5
+        if (!prgMatches(bus, m4, 0x30, 0x10, 0x40, 0x40)) return false;
+        m4.cpuWrite(0x8000, 0x47); m4.cpuWrite(0x8001, 2); // $8000 fixed, R6 at $C000
+        if (!prgMatches(bus, m4, 0x40, 0x20, 0x30, 0x40)) return false;
+
+        m4.cpuWrite(0x8000, 0x02); m4.cpuWrite(0x8001, 11); // R2 = bank 3 at $1000
+        m4.ppuWrite(0x1005, 0x77);
+        m4.cpuWrite(0x8000, 0x82); m4.cpuWrite(0x8001, 3); // inverted: R2 at $0000
+        return m4.ppuRead(0x0005) == 0x77 && m4.ppuRead(0x1005) != 0x77;
+    }
+
+    /**
+     * Pattern page table: the PPU reads CHR straight from the pages MMC3 maps
+     * and follows its bank writes, and each $0xxx to $1xxx move of a PPU
+     * pattern access (A12 rising) clocks the scanline counter.
+     */
+    public static boolean runPatternPaging() {
+        Cartridge cart = makeRom(4, 0, true, 4, null, 0x00, 0x80); // 8KB CHR RAM
+        int[] irqs = new int[1];
+        CPU cpu = new CPU() {
+            @Override
+            public void irq() { irqs[0]++; }
+        };
+        PPU ppu = new PPU();
+        Bus bus = new Bus(cpu, ppu, new APU(), new RAM(2 * 1024));
+        bus.setCartridge(cart); ppu.setCartridge(cart); cart.reset(); ppu.reset();
+        Mapper m4 = cart.getMapper();
+
+        m4.cpuWrite(0x8000, 0x02); m4.cpuWrite(0x8001, 3); // R2 = bank 3 at $1000
+        writeVram(ppu, 0x1005, 0x77);
+        m4.cpuWrite(0x8000, 0x82); // inverted: R2 at $0000
+        if (ppu.getVramByteForAddr(0x0005) != 0x77 || ppu.getVramByteForAddr(0x1005) == 0x77) return false;
+
+        m4.cpuWrite(0xC000, 1); m4.cpuWrite(0xC001, 0); m4.cpuWrite(0xE001, 0); // latch 1, reload, enable
+        for (int i = 0; i < 3; i++) {
+            ppu.getVramByteForAddr(0x0000);
+            ppu.getVramByteForAddr(0x1000); // rise: reload to 1, then 0 (IRQ), then reload
+            ppu.getVramByteForAddr(0x1800); // no edge
+        }
+        return irqs[0] == 1;
+    }
+
+    private static boolean prgMatches(Bus bus, Mapper mapper, int... fills) {
+        for (int slot = 0; slot < 4; slot++) {
+            for (int address = 0x8000 + slot * 0x2000; address < 0xA000 + slot * 0x2000; address += 0x7FF) {
+                int expected = address >= 0xFFFC ? mapper.cpuRead(address) : fills[slot];
+                if (mapper.cpuRead(address) != expected || (bus.read(address) & 0xFF) != expected) return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVram(PPU ppu, int address, int value) {
+        ppu.writeRegister(0x2006, address >> 8);
+        ppu.writeRegister(0x2006, address & 0xFF);
+        ppu.writeRegister(0x2007, value);
+    }
+
+    /** Run all available mapper self-tests. */
+    public static boolean runAll() {
+        return runMMC1Basic() && runChrCache() && runNametablePaging() && runBankTables()
+                && runPatternPaging();
+    }
 }
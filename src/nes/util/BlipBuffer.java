@@ -0,0 +1,115 @@
+package nes.util;
+
+import java.util.Arrays;
+
+/**
+ * Band-limited step synthesis. A source running at {@code clockRate} reports
+ * only the amplitude changes of its output, each at the clock it happened on;
+ * every change is spread over the output samples as a windowed-sinc impulse
+ * (the derivative of a band-limited step) at {@code sampleRate}, and reading
+ * integrates those impulses back into a waveform. Work is proportional to the
+ * number of changes rather than the number of clocks, and nothing above the
+ * output's Nyquist frequency aliases back into the audible band.
+ *
+ * Clocks are counted from the start of the current frame; {@link #endFrame}
+ * closes a frame and makes its samples readable. Output lags input by
+ * {@link #HALF_WIDTH} samples, the kernel's half width.
+ */
+public final class BlipBuffer {
+    public static final int HALF_WIDTH = 8;          // kernel taps on each side of a step
+    private static final int TAPS = HALF_WIDTH * 2;
+    private static final int PHASE_BITS = 5;         // sub-sample positions per output sample
+    private static final int PHASES = 1 << PHASE_BITS;
+    private static final int FRAC_BITS = 32;         // fixed-point fraction of a sample position
+    private static final double CUTOFF = 0.90;       // of the output Nyquist frequency
+
+    // KERNEL[phase * TAPS + tap]: one band-limited impulse per sub-sample phase, each summing to 1.
+    private static final float[] KERNEL = new float[PHASES * TAPS];
+
+    static {
+        for (int phase = 0; phase < PHASES; phase++) {
+            double offset = (double) phase / PHASES;
+            double sum = 0;
+            double[] taps = new double[TAPS];
+            for (int tap = 0; tap < TAPS; tap++) {
+                double x = tap - (HALF_WIDTH - 1) - offset; // distance from the step, in samples
+                double sinc = (x == 0) ? 1.0 : Math.sin(Math.PI * CUTOFF * x) / (Math.PI * CUTOFF * x);
+                double w = x / HALF_WIDTH;                   // Blackman window over [-1, 1]
+                double window = (Math.abs(w) >= 1) ? 0
+                        : 0.42 + 0.5 * Math.cos(Math.PI * w) + 0.08 * Math.cos(2 * Math.PI * w);
+                taps[tap] = sinc * window;
+                sum += taps[tap];
+            }
+            for (int tap = 0; tap < TAPS; tap++) {
+                KERNEL[phase * TAPS + tap] = (float) (taps[tap] / sum);
+            }
+        }
+    }
+
+    private final double clockRate;
+    private long factor;        // output samples per clock, FRAC_BITS fixed point
+    private final float[] buffer;
+    private long offset;        // position of the current frame's clock 0, FRAC_BITS fixed point
+    private float integrator;
+
+    /** @param maxSamples the most samples allowed to be pending (ended frames not yet read) */
+    public BlipBuffer(double clockRate, double sampleRate, int maxSamples) {
+        this.clockRate = clockRate;
+        this.buffer = new float[maxSamples + TAPS + 1];
+        setSampleRate(sampleRate);
+    }
+
+    /**
+     * Change the output rate, e.g. to resample at a new rate or to nudge it for
+     * drift. Call between frames; the current frame must not have deltas yet.
+     */
+    public void setSampleRate(double sampleRate) {
+        this.factor = Math.round(sampleRate / clockRate * (1L << FRAC_BITS));
+    }
+
+    /** Record an output change of {@code delta} at {@code clock} clocks into the current frame. */
+    public void addDelta(int clock, float delta) {
+        long position = offset + clock * factor;
+        int index = (int) (position >>> FRAC_BITS);
+        int phase = (int) (position >>> (FRAC_BITS - PHASE_BITS)) & (PHASES - 1);
+        int k = phase * TAPS;
+        float[] buf = buffer;
+        for (int tap = 0; tap < TAPS; tap++) {
+            buf[index + tap] += KERNEL[k + tap] * delta;
+        }
+    }
+
+    /** End the current frame after {@code clocks} clocks; the next frame starts at clock 0. */
+    public void endFrame(int clocks) {
+        offset += clocks * factor;
+    }
+
+    /** Samples that can be read: those no later change can reach. */
+    public int samplesAvailable() {
+        return (int) (offset >>> FRAC_BITS);
+    }
+
+    /** Move up to {@code count} finished samples into {@code out}; returns the number read. */
+    public int readSamples(float[] out, int count) {
+        count = Math.min(count, samplesAvailable());
+        float sum = integrator;
+        for (int i = 0; i < count; i++) {
+            sum += buffer[i];
+            out[i] = sum;
+        }
+        integrator = sum;
+        // Shift what is still pending (including the kernel tails) to the front.
+        int remaining = samplesAvailable() - count + TAPS;
+        System.arraycopy(buffer, count, buffer, 0, remaining);
+        Arrays.fill(buffer, remaining, remaining + count, 0f);
+        offset -= (long) count << FRAC_BITS;
+        return count;
+    }
+
+    /** Drop all pending samples and return to silence. */
+    public void clear() {
+        Arrays.fill(buffer, 0f);
+        offset = 0;
+        integrator = 0;
+    }
+}
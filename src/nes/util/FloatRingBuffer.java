@@ -0,0 +1,78 @@
+package nes.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring of primitive floats for exactly one producer thread and one
+ * consumer thread. The write and read positions only ever grow; each side
+ * publishes its own with a release store and reads the other's with an
+ * acquire load, so no locks are taken and nothing is allocated after
+ * construction. The producer's samples are dropped (and counted) when the
+ * ring is full; a drain that finds it empty counts as an underrun.
+ */
+public final class FloatRingBuffer {
+    private final float[] data;
+    private final int mask;
+    private final AtomicLong writePos = new AtomicLong();
+    private final AtomicLong readPos = new AtomicLong();
+    private long overflows;  // producer only
+    private long underruns;  // consumer only
+
+    /** @param capacity ring size, rounded up to a power of two */
+    public FloatRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        data = new float[size];
+        mask = size - 1;
+    }
+
+    public int capacity() { return data.length; }
+
+    /** Samples waiting to be drained (approximate while the other side is active). */
+    public int size() { return (int) (writePos.get() - readPos.get()); }
+
+    /** Producer: whether the next offer would be dropped. */
+    public boolean isFull() {
+        return writePos.get() - readPos.get() >= data.length;
+    }
+
+    /** Producer: append one sample, or count an overflow and return false if full. */
+    public boolean offer(float sample) {
+        long w = writePos.get();
+        if (w - readPos.get() >= data.length) {
+            overflows++;
+            return false;
+        }
+        data[(int) w & mask] = sample;
+        writePos.lazySet(w + 1); // release: the sample is visible before the new position
+        return true;
+    }
+
+    /** Consumer: move up to {@code buffer.length} samples into {@code buffer}; returns the count. */
+    public int drain(float[] buffer) {
+        return drain(buffer, 0, buffer.length);
+    }
+
+    /** Consumer: move up to {@code length} samples into {@code buffer} at {@code offset}. */
+    public int drain(float[] buffer, int offset, int length) {
+        long r = readPos.get();
+        int count = (int) Math.min(length, writePos.get() - r);
+        if (count <= 0) {
+            underruns++;
+            return 0;
+        }
+        int start = (int) r & mask;
+        int first = Math.min(count, data.length - start);
+        System.arraycopy(data, start, buffer, offset, first);
+        System.arraycopy(data, 0, buffer, offset + first, count - first);
+        readPos.lazySet(r + count); // release: the slots are free only after they were copied
+        return count;
+    }
+
+    /** Discard everything; only while neither side is running. */
+    public void clear() {
+        readPos.set(writePos.get());
+    }
+
+    public long getOverflows() { return overflows; }
+    public long getUnderruns() { return underruns; }
+}
@@ -0,0 +1,65 @@
+package nes.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring of primitive longs for exactly one producer thread and one
+ * consumer thread, with the same release/acquire protocol as
+ * {@link FloatRingBuffer}. Unlike that ring it never drops anything: a
+ * producer that finds it full has to wait for the consumer, so it suits logs
+ * whose every entry matters.
+ */
+public final class LongRingBuffer {
+    private final long[] data;
+    private final int mask;
+    private final AtomicLong writePos = new AtomicLong();
+    private final AtomicLong readPos = new AtomicLong();
+
+    /** @param capacity ring size, rounded up to a power of two */
+    public LongRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        data = new long[size];
+        mask = size - 1;
+    }
+
+    public int capacity() { return data.length; }
+
+    /** Entries waiting to be drained (approximate while the other side is active). */
+    public int size() { return (int) (writePos.get() - readPos.get()); }
+
+    /** Producer: whether the next offer would fail. */
+    public boolean isFull() {
+        return writePos.get() - readPos.get() >= data.length;
+    }
+
+    /** Producer: append one entry, or return false if the ring is full. */
+    public boolean offer(long entry) {
+        long w = writePos.get();
+        if (w - readPos.get() >= data.length) {
+            return false;
+        }
+        data[(int) w & mask] = entry;
+        writePos.lazySet(w + 1); // release: the entry is visible before the new position
+        return true;
+    }
+
+    /** Consumer: move up to {@code buffer.length} entries into {@code buffer}; returns the count. */
+    public int drain(long[] buffer) {
+        long r = readPos.get();
+        int count = (int) Math.min(buffer.length, writePos.get() - r);
+        if (count <= 0) {
+            return 0;
+        }
+        int start = (int) r & mask;
+        int first = Math.min(count, data.length - start);
+        System.arraycopy(data, start, buffer, 0, first);
+        System.arraycopy(data, 0, buffer, first, count - first);
+        readPos.lazySet(r + count); // release: the slots are free only after they were copied
+        return count;
+    }
+
+    /** Discard everything; only while neither side is running. */
+    public void clear() {
+        readPos.set(writePos.get());
+    }
+}
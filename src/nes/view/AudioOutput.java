@@ -0,0 +1,81 @@
+package nes.view;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Audio sink (View in MVC) for the APU's float samples: 16-bit mono PCM on a
+ * small line buffer. Writes never block, so the emulation keeps its own pace;
+ * instead the sink reports a rate adjustment that asks for slightly more
+ * samples while its buffer is under half full and slightly fewer while it is
+ * over, which holds the level (and so the latency) steady despite the
+ * emulation clock and the sound card clock drifting apart.
+ */
+public final class AudioOutput {
+    private static final double MAX_RATE_ADJUST = 0.005; // +-0.5%, too little to hear as pitch
+
+    private final SourceDataLine line;
+    private final int sampleRate;
+    private final int bufferSamples;
+    private byte[] bytes = new byte[0];
+    private long droppedSamples;
+
+    /** Open the default line at {@code sampleRate} with room for {@code bufferMillis} of sound. */
+    public AudioOutput(int sampleRate, int bufferMillis) throws LineUnavailableException {
+        this.sampleRate = sampleRate;
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false); // Little Endian
+        line = (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+        line.open(format, Math.max(256, sampleRate * bufferMillis / 1000) * 2);
+        bufferSamples = line.getBufferSize() / 2;
+        line.start();
+        // Start half full, where the rate adjustment will try to keep it
+        line.write(new byte[bufferSamples / 2 * 2], 0, bufferSamples / 2 * 2);
+    }
+
+    /** Queue {@code count} samples; whatever doesn't fit in the buffer is dropped and counted. */
+    public void write(float[] samples, int count) {
+        int fits = Math.min(count, line.available() / 2);
+        if (bytes.length < fits * 2) {
+            bytes = new byte[fits * 2];
+        }
+        for (int i = 0; i < fits; i++) {
+            float sample = Math.max(-1.0f, Math.min(1.0f, samples[i]));
+            short pcm = (short) (sample * Short.MAX_VALUE);
+            bytes[i * 2] = (byte) pcm;
+            bytes[i * 2 + 1] = (byte) (pcm >> 8);
+        }
+        line.write(bytes, 0, fits * 2);
+        droppedSamples += count - fits;
+    }
+
+    /** Factor for the APU sample rate (see {@code NESConsole.setAudioRateAdjust}). */
+    public double getRateAdjust() {
+        return 1.0 + MAX_RATE_ADJUST * (1.0 - 2.0 * getFill());
+    }
+
+    /** Buffer level, 0 (empty, about to underrun) to 1 (full). */
+    public double getFill() {
+        return (double) getQueuedSamples() / bufferSamples;
+    }
+
+    /** Time until a sample written now is heard. */
+    public double getLatencyMillis() {
+        return 1000.0 * getQueuedSamples() / sampleRate;
+    }
+
+    private int getQueuedSamples() {
+        return Math.max(0, bufferSamples - line.available() / 2);
+    }
+
+    public int getSampleRate() { return sampleRate; }
+    public int getBufferSamples() { return bufferSamples; }
+    /** Samples thrown away because the buffer was full. */
+    public long getDroppedSamples() { return droppedSamples; }
+
+    public void close() {
+        line.close();
+    }
+}
@@ -1,10 +1,14 @@
 package nes.view;
 
 import nes.model.NESConsole;
+import nes.model.PPU;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Simple Swing View for the NES emulator (View in MVC).
@@ -15,6 +19,9 @@ public class NESWindow {
     private final JFrame frame;
     private final ScreenPanel screenPanel;
     private final BufferedImage image;
+    private final int[] raster; // the image's own pixels; frames are converted straight into it
+    private boolean imageChanged;
+    private final AtomicBoolean repaintQueued = new AtomicBoolean();
 
     private final int scale;
     private int currentFps = 0;
@@ -28,6 +35,7 @@ public class NESWindow {
         this.scale = Math.max(1, scale);
         this.frame = new JFrame("NES Emulator (MVC Outline)");
         this.image = new BufferedImage(console.getScreenWidth(), console.getScreenHeight(), BufferedImage.TYPE_INT_RGB);
+        this.raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
         this.screenPanel = new ScreenPanel();
 
         screenPanel.setPreferredSize(new Dimension(console.getScreenWidth() * this.scale, console.getScreenHeight() * this.scale));
@@ -46,10 +54,26 @@ public class NESWindow {
         SwingUtilities.invokeLater(screenPanel::requestFocusInWindow);
     }
 
+    /**
+     * Ask for the newest frame to be shown; callable from any thread. At most one
+     * repaint is queued on the EDT at a time, so frames the EDT cannot keep up
+     * with are skipped instead of piling up as events.
+     */
+    public void requestRepaint() {
+        if (repaintQueued.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::repaintScreen);
+        }
+    }
+
     public void repaintScreen() {
-        // Copy framebuffer into the image and repaint.
-        int[] fb = console.getFrameBuffer();
-        image.setRGB(0, 0, console.getScreenWidth(), console.getScreenHeight(), fb, 0, console.getScreenWidth());
+        repaintQueued.set(false);
+        // Take the newest complete frame, if one arrived since the last repaint.
+        short[] frame = console.getFrameExchange().poll();
+        if (frame == null) {
+            return;
+        }
+        PPU.toRgb(frame, raster);
+        imageChanged = true;
         screenPanel.repaint();
     }
     
@@ -61,7 +85,15 @@ public class NESWindow {
         return screenPanel;
     }
 
+    /**
+     * Paints the frame scaled up from a VolatileImage copy, so the scaling blit
+     * stays on the accelerated Java2D pipeline. The copy is refreshed only when a
+     * new frame arrived or its contents were lost; without a volatile surface
+     * (e.g. no accelerated pipeline) the BufferedImage is drawn directly.
+     */
     private class ScreenPanel extends JPanel {
+        private VolatileImage screen;
+
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
@@ -70,7 +102,7 @@ public class NESWindow {
                 g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
                 int w = console.getScreenWidth();
                 int h = console.getScreenHeight();
-                g2.drawImage(image, 0, 0, w * scale, h * scale, null);
+                drawFrame(g2, w, h);
                 
                 // Draw FPS Overlay
                 g2.setColor(Color.GREEN);
@@ -80,5 +112,25 @@ public class NESWindow {
                 g2.dispose();
             }
         }
+
+        private void drawFrame(Graphics2D g2, int w, int h) {
+            do {
+                if (screen == null || screen.validate(getGraphicsConfiguration()) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                    screen = createVolatileImage(w, h);
+                    imageChanged = true;
+                    if (screen == null) {
+                        g2.drawImage(image, 0, 0, w * scale, h * scale, null);
+                        return;
+                    }
+                }
+                if (imageChanged || screen.contentsLost()) {
+                    Graphics2D vg = screen.createGraphics();
+                    vg.drawImage(image, 0, 0, null);
+                    vg.dispose();
+                    imageChanged = false;
+                }
+                g2.drawImage(screen, 0, 0, w * scale, h * scale, null);
+            } while (screen.contentsLost());
+        }
     }
 }